@@ -0,0 +1,116 @@
+package com.github.phantomthief.model.builder.benchmark;
+
+import static java.util.concurrent.TimeUnit.MICROSECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.github.phantomthief.model.builder.ModelBuilder;
+import com.github.phantomthief.model.builder.context.impl.SimpleBuildContext;
+import com.github.phantomthief.model.builder.impl.SimpleModelBuilder;
+
+/**
+ * Boxed id namespaces against long id namespaces, for both building and lookups in build context.
+ *
+ * @author w.vela
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(MICROSECONDS)
+@Warmup(iterations = 3, time = 2, timeUnit = SECONDS)
+@Measurement(iterations = 5, time = 2, timeUnit = SECONDS)
+@Fork(1)
+public class LongNamespaceBenchmark {
+
+    private static final String BOXED = "boxed";
+    private static final String LONG = "long";
+
+    @Param({ "100", "10000" })
+    private int sourceCount;
+
+    private List<Scenario.Item> sources;
+    private ModelBuilder<SimpleBuildContext> boxedModelBuilder;
+    private ModelBuilder<SimpleBuildContext> longModelBuilder;
+    private SimpleBuildContext boxedBuildContext;
+    private SimpleBuildContext longBuildContext;
+
+    @Setup
+    public void setup() {
+        sources = new Scenario(sourceCount, 0, 0, 0, 0, false, 0).sources();
+        boxedModelBuilder = new SimpleModelBuilder<SimpleBuildContext>()
+                .extractId(Scenario.Item.class, Scenario.Item::getId, BOXED)
+                .buildValueTo(BOXED, LongNamespaceBenchmark::boxedValues, BOXED)
+                .compile();
+        longModelBuilder = new SimpleModelBuilder<SimpleBuildContext>()
+                .extractLongId(Scenario.Item.class, Scenario.Item::getId, LONG)
+                .buildLongValue(LONG, LongNamespaceBenchmark::longValues, LONG)
+                .compile();
+        boxedBuildContext = boxedBuild();
+        longBuildContext = longBuild();
+    }
+
+    @Benchmark
+    public SimpleBuildContext boxedBuild() {
+        SimpleBuildContext buildContext = new SimpleBuildContext();
+        boxedModelBuilder.buildMulti(sources, buildContext);
+        return buildContext;
+    }
+
+    @Benchmark
+    public SimpleBuildContext longBuild() {
+        SimpleBuildContext buildContext = new SimpleBuildContext();
+        longModelBuilder.buildMulti(sources, buildContext);
+        return buildContext;
+    }
+
+    @Benchmark
+    public long boxedLookup() {
+        Map<Long, Long> data = boxedBuildContext.getData(BOXED);
+        long result = 0;
+        for (long id = 0; id < sourceCount; id++) {
+            result += data.get(id);
+        }
+        return result;
+    }
+
+    @Benchmark
+    public long longLookup() {
+        long result = 0;
+        for (long id = 0; id < sourceCount; id++) {
+            Long value = longBuildContext.getData(LONG, id);
+            result += value;
+        }
+        return result;
+    }
+
+    private static Map<Long, Long> boxedValues(Collection<Long> ids) {
+        Map<Long, Long> result = new HashMap<>(ids.size() * 2);
+        for (Long id : ids) {
+            result.put(id, id);
+        }
+        return result;
+    }
+
+    private static Map<Long, Long> longValues(long[] ids) {
+        Map<Long, Long> result = new HashMap<>(ids.length * 2);
+        for (long id : ids) {
+            result.put(id, id);
+        }
+        return result;
+    }
+}
@@ -0,0 +1,94 @@
+package com.github.phantomthief.model.builder.benchmark;
+
+import static java.util.concurrent.TimeUnit.MICROSECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+import java.util.List;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.github.phantomthief.model.builder.ModelBuilder;
+import com.github.phantomthief.model.builder.context.impl.SimpleBuildContext;
+import com.github.phantomthief.model.builder.impl.SimpleModelBuilder;
+
+/**
+ * Builds a {@link Scenario} from scratch in each invocation, a new build context per invocation as in a request.
+ *
+ * run with {@code -prof gc} for the allocation rate.
+ *
+ * @author w.vela
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(MICROSECONDS)
+@Warmup(iterations = 3, time = 2, timeUnit = SECONDS)
+@Measurement(iterations = 5, time = 2, timeUnit = SECONDS)
+@Fork(1)
+public class ModelBuilderBenchmark {
+
+    @Param({ "10", "100", "1000" })
+    private int sourceCount;
+
+    @Param({ "1", "3" })
+    private int depth;
+
+    @Param({ "4" })
+    private int fanOut;
+
+    @Param({ "1", "8" })
+    private int namespaceCount;
+
+    @Param({ "0.0", "0.5", "0.9" })
+    private double overlap;
+
+    @Param({ "false", "true" })
+    private boolean lazy;
+
+    @Param({ "0", "8" })
+    private int hierarchyDepth;
+
+    private Scenario scenario;
+    private List<Scenario.Item> sources;
+    private SimpleModelBuilder<SimpleBuildContext> modelBuilder;
+    private ModelBuilder<SimpleBuildContext> compiledModelBuilder;
+
+    @Setup
+    public void setup() {
+        scenario = new Scenario(sourceCount, depth, fanOut, namespaceCount, overlap, lazy, hierarchyDepth);
+        sources = scenario.sources();
+        modelBuilder = scenario.modelBuilder();
+        compiledModelBuilder = scenario.modelBuilder().compile();
+    }
+
+    @Benchmark
+    public void buildMulti(Blackhole blackhole) {
+        SimpleBuildContext buildContext = new SimpleBuildContext();
+        modelBuilder.buildMulti(sources, buildContext);
+        blackhole.consume(scenario.readAttributes(buildContext));
+    }
+
+    @Benchmark
+    public void compiledBuildMulti(Blackhole blackhole) {
+        SimpleBuildContext buildContext = new SimpleBuildContext();
+        compiledModelBuilder.buildMulti(sources, buildContext);
+        blackhole.consume(scenario.readAttributes(buildContext));
+    }
+
+    @Benchmark
+    public void buildMultiAsync(Blackhole blackhole) {
+        SimpleBuildContext buildContext = compiledModelBuilder.buildMultiAsync(sources, new SimpleBuildContext())
+                .join();
+        blackhole.consume(scenario.readAttributes(buildContext));
+    }
+}
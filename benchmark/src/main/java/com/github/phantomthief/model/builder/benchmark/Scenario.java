@@ -0,0 +1,220 @@
+package com.github.phantomthief.model.builder.benchmark;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.function.LongFunction;
+
+import com.github.phantomthief.model.builder.context.impl.SimpleBuildContext;
+import com.github.phantomthief.model.builder.impl.SimpleModelBuilder;
+
+/**
+ * A synthetic model graph for benchmarks.
+ *
+ * Sources are items of level 0. An item of level l refers to fanOut items of level l+1, up to given depth,
+ * and each level has namespaceCount attribute namespaces built from the ids of the level. Referred ids are
+ * drawn from a pool shrunk by the overlap ratio, so a larger ratio means more ids shared among items.
+ *
+ * @author w.vela
+ */
+final class Scenario {
+
+    private static final List<LongFunction<Item>> HIERARCHY = new ArrayList<>();
+
+    static {
+        HIERARCHY.add(Item::new);
+        HIERARCHY.add(Item1::new);
+        HIERARCHY.add(Item2::new);
+        HIERARCHY.add(Item3::new);
+        HIERARCHY.add(Item4::new);
+        HIERARCHY.add(Item5::new);
+        HIERARCHY.add(Item6::new);
+        HIERARCHY.add(Item7::new);
+        HIERARCHY.add(Item8::new);
+    }
+
+    static final int MAX_HIERARCHY_DEPTH = HIERARCHY.size() - 1;
+
+    private final int sourceCount;
+    private final int depth;
+    private final int fanOut;
+    private final int namespaceCount;
+    private final long poolSize;
+    private final boolean lazy;
+    private final LongFunction<Item> itemFactory;
+
+    /**
+     * @param hierarchyDepth the depth of the class of items below {@link Item}, all extractors are registered on
+     * {@link Item}, so it's the depth the extractors are dispatched through.
+     */
+    Scenario(int sourceCount, int depth, int fanOut, int namespaceCount, double overlap, boolean lazy,
+            int hierarchyDepth) {
+        checkArgument(overlap >= 0 && overlap < 1, "overlap should be in [0, 1).");
+        checkArgument(hierarchyDepth >= 0 && hierarchyDepth <= MAX_HIERARCHY_DEPTH);
+        this.sourceCount = sourceCount;
+        this.depth = depth;
+        this.fanOut = fanOut;
+        this.namespaceCount = namespaceCount;
+        this.poolSize = Math.max(1, (long) (sourceCount * fanOut * (1 - overlap)));
+        this.lazy = lazy;
+        this.itemFactory = HIERARCHY.get(hierarchyDepth);
+    }
+
+    static String level(int level) {
+        return "level-" + level;
+    }
+
+    static String attribute(int level, int index) {
+        return "attribute-" + level + "-" + index;
+    }
+
+    SimpleModelBuilder<SimpleBuildContext> modelBuilder() {
+        SimpleModelBuilder<SimpleBuildContext> result = new SimpleModelBuilder<>();
+        // sources are values of level 0 too, as lazy attributes are built from the keys of value namespaces
+        result.extractValue(Item.class, item -> item.level == 0 ? item : null, (Item item) -> item.id, level(0));
+        result.extractId(Item.class, item -> item.level == 0 ? item.id : null, level(0));
+        for (int level = 0; level <= depth; level++) {
+            int current = level;
+            if (level < depth) {
+                result.extractId(Item.class, item -> item.level == current ? item.refIds : null, level(level + 1));
+                result.buildValueTo(level(level + 1), (Collection<Long> ids) -> items(ids, current + 1),
+                        level(level + 1));
+            }
+            for (int i = 0; i < namespaceCount; i++) {
+                Function<Collection<Long>, Map<Long, ?>> attributeBuilder = Scenario::attributes;
+                if (lazy) {
+                    result.lazyBuild(level(level), attributeBuilder, attribute(level, i));
+                } else {
+                    result.buildValueTo(level(level), attributeBuilder, attribute(level, i));
+                }
+            }
+        }
+        return result;
+    }
+
+    List<Item> sources() {
+        List<Item> result = new ArrayList<>(sourceCount);
+        for (long id = 0; id < sourceCount; id++) {
+            result.add(item(id, 0));
+        }
+        return result;
+    }
+
+    /**
+     * reads all attribute namespaces, which materializes the lazy ones.
+     */
+    int readAttributes(SimpleBuildContext buildContext) {
+        int result = 0;
+        for (int level = 0; level <= depth; level++) {
+            for (int i = 0; i < namespaceCount; i++) {
+                result += buildContext.getData(attribute(level, i)).size();
+            }
+        }
+        return result;
+    }
+
+    private Map<Long, Item> items(Collection<Long> ids, int level) {
+        Map<Long, Item> result = new HashMap<>(ids.size() * 2);
+        for (Long id : ids) {
+            result.put(id, item(id, level));
+        }
+        return result;
+    }
+
+    private Item item(long id, int level) {
+        Item item = itemFactory.apply(id);
+        item.level = level;
+        if (level < depth) {
+            List<Long> refIds = new ArrayList<>(fanOut);
+            for (int i = 0; i < fanOut; i++) {
+                refIds.add(Math.floorMod(id * fanOut + i, poolSize));
+            }
+            item.refIds = refIds;
+        }
+        return item;
+    }
+
+    private static Map<Long, Object> attributes(Collection<Long> ids) {
+        Map<Long, Object> result = new HashMap<>(ids.size() * 2);
+        for (Long id : ids) {
+            result.put(id, id);
+        }
+        return result;
+    }
+
+    static class Item {
+
+        private final long id;
+        private int level;
+        private List<Long> refIds;
+
+        Item(long id) {
+            this.id = id;
+        }
+
+        long getId() {
+            return id;
+        }
+    }
+
+    static class Item1 extends Item {
+
+        Item1(long id) {
+            super(id);
+        }
+    }
+
+    static class Item2 extends Item1 {
+
+        Item2(long id) {
+            super(id);
+        }
+    }
+
+    static class Item3 extends Item2 {
+
+        Item3(long id) {
+            super(id);
+        }
+    }
+
+    static class Item4 extends Item3 {
+
+        Item4(long id) {
+            super(id);
+        }
+    }
+
+    static class Item5 extends Item4 {
+
+        Item5(long id) {
+            super(id);
+        }
+    }
+
+    static class Item6 extends Item5 {
+
+        Item6(long id) {
+            super(id);
+        }
+    }
+
+    static class Item7 extends Item6 {
+
+        Item7(long id) {
+            super(id);
+        }
+    }
+
+    static class Item8 extends Item7 {
+
+        Item8(long id) {
+            super(id);
+        }
+    }
+}
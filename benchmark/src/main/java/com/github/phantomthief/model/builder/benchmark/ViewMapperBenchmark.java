@@ -0,0 +1,82 @@
+package com.github.phantomthief.model.builder.benchmark;
+
+import static java.util.concurrent.TimeUnit.MICROSECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+import java.util.List;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.github.phantomthief.model.builder.context.impl.SimpleBuildContext;
+import com.github.phantomthief.view.mapper.ViewMapper;
+import com.github.phantomthief.view.mapper.impl.DefaultViewMapperImpl;
+
+/**
+ * Maps built models to views, the mapper is registered on the root class so models of deep class hierarchies
+ * are dispatched through their super classes.
+ *
+ * @author w.vela
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(MICROSECONDS)
+@Warmup(iterations = 3, time = 2, timeUnit = SECONDS)
+@Measurement(iterations = 5, time = 2, timeUnit = SECONDS)
+@Fork(1)
+public class ViewMapperBenchmark {
+
+    @Param({ "10", "1000" })
+    private int modelCount;
+
+    @Param({ "0", "8" })
+    private int hierarchyDepth;
+
+    private List<Scenario.Item> models;
+    private SimpleBuildContext buildContext;
+    private ViewMapper viewMapper;
+
+    @Setup
+    public void setup() {
+        Scenario scenario = new Scenario(modelCount, 1, 1, 1, 0, false, hierarchyDepth);
+        models = scenario.sources();
+        buildContext = new SimpleBuildContext();
+        scenario.modelBuilder().buildMulti(models, buildContext);
+        viewMapper = new DefaultViewMapperImpl()
+                .addMapper(Scenario.Item.class, (context, item) -> new ItemView(item.getId(),
+                        context.getData(Scenario.attribute(0, 0)).get(item.getId())));
+    }
+
+    @Benchmark
+    public List<ItemView> map() {
+        return viewMapper.map(models, buildContext);
+    }
+
+    public static final class ItemView {
+
+        private final long id;
+        private final Object attribute;
+
+        ItemView(long id, Object attribute) {
+            this.id = id;
+            this.attribute = attribute;
+        }
+
+        public long getId() {
+            return id;
+        }
+
+        public Object getAttribute() {
+            return attribute;
+        }
+    }
+}
@@ -1,8 +1,19 @@
 package com.github.phantomthief.model.builder;
 
+import static com.google.common.base.Preconditions.checkArgument;
 import static java.util.Collections.singleton;
 
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
 import com.github.phantomthief.model.builder.context.BuildContext;
+import com.github.phantomthief.model.builder.context.impl.CarryOverCache;
+import com.github.phantomthief.model.builder.context.impl.SimpleBuildContext;
+import com.google.common.collect.Iterators;
 
 /**
  * 
@@ -15,4 +26,87 @@ public interface ModelBuilder<B extends BuildContext> {
     default void buildSingle(Object one, B buildContext) {
         buildMulti(singleton(one), buildContext);
     }
+
+    /**
+     * @return a future completed with given buildContext after building finished.
+     * the default implementation builds synchronously in caller thread.
+     */
+    default CompletableFuture<B> buildMultiAsync(Iterable<?> sources, B buildContext) {
+        CompletableFuture<B> future = new CompletableFuture<>();
+        try {
+            buildMulti(sources, buildContext);
+            future.complete(buildContext);
+        } catch (Throwable e) {
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+
+    default CompletableFuture<B> buildSingleAsync(Object one, B buildContext) {
+        return buildMultiAsync(singleton(one), buildContext);
+    }
+
+    /**
+     * build sources window by window in given build context, each window is passed to onWindowBuilt in caller
+     * thread once it's built (with all values it depends on), before next window is read from sources.
+     * so a streaming response can write the first window without waiting for the whole page.
+     * values built for earlier windows are not built again for later ones, while lazy namespaces of
+     * {@link SimpleBuildContext} are built again for each window (with the values of all windows built so far).
+     */
+    default <T> void buildStream(Iterator<T> sources, int windowSize, B buildContext,
+            Consumer<? super List<T>> onWindowBuilt) {
+        checkArgument(windowSize > 0);
+        Iterator<List<T>> windows = Iterators.partition(sources, windowSize);
+        while (windows.hasNext()) {
+            List<T> window = windows.next();
+            StreamBuild.resetLazyData(buildContext);
+            buildMulti(window, buildContext);
+            onWindowBuilt.accept(window);
+        }
+    }
+
+    /**
+     * same as {@link #buildStream}, but each window is built by {@link #buildMultiAsync}, and onWindowBuilt
+     * is called in the thread completing it.
+     *
+     * @return a future completed with given buildContext after all windows are consumed, or completed
+     * exceptionally by the first failure of sources, building or onWindowBuilt. cancelling it stops reading
+     * following windows.
+     */
+    default <T> CompletableFuture<B> buildStreamAsync(Iterator<T> sources, int windowSize,
+            B buildContext, Consumer<? super List<T>> onWindowBuilt) {
+        checkArgument(windowSize > 0);
+        return new StreamBuild<>(this, Iterators.partition(sources, windowSize), buildContext, onWindowBuilt)
+                .start();
+    }
+
+    /**
+     * build sources window by window for bulk jobs (e.g. exports), each window is built in a new build context
+     * given by contextFactory, and the context is passed to onWindowBuilt with the window, so memory is bounded
+     * by window size instead of all sources.
+     *
+     * @param carryOverSize at most given number of most recently used values of each namespace are carried to
+     * the next window, so hot values (e.g. common authors) are not built again by each window.
+     * it's only for {@link SimpleBuildContext}, see {@link CarryOverCache}. 0 means nothing is carried.
+     */
+    default <T> void buildWindows(Iterator<T> sources, int windowSize, Supplier<? extends B> contextFactory,
+            int carryOverSize, BiConsumer<? super List<T>, ? super B> onWindowBuilt) {
+        checkArgument(windowSize > 0);
+        checkArgument(carryOverSize >= 0);
+        CarryOverCache carryOver = carryOverSize > 0 ? new CarryOverCache(carryOverSize) : null;
+        Iterator<List<T>> windows = Iterators.partition(sources, windowSize);
+        while (windows.hasNext()) {
+            List<T> window = windows.next();
+            B buildContext = contextFactory.get();
+            boolean carrying = carryOver != null && buildContext instanceof SimpleBuildContext;
+            if (carrying) {
+                carryOver.carryInto((SimpleBuildContext) buildContext);
+            }
+            buildMulti(window, buildContext);
+            onWindowBuilt.accept(window, buildContext);
+            if (carrying) {
+                carryOver.update((SimpleBuildContext) buildContext);
+            }
+        }
+    }
 }
@@ -0,0 +1,99 @@
+package com.github.phantomthief.model.builder;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Consumer;
+
+import com.github.phantomthief.model.builder.context.BuildContext;
+import com.github.phantomthief.model.builder.context.impl.SimpleBuildContext;
+
+/**
+ * the state of a {@link ModelBuilder#buildStreamAsync}, windows completed synchronously are built in a loop
+ * instead of by recursion, so a long stream doesn't overflow the stack.
+ *
+ * @author w.vela
+ */
+final class StreamBuild<B extends BuildContext, T> {
+
+    private final ModelBuilder<B> modelBuilder;
+    private final Iterator<List<T>> windows;
+    private final B buildContext;
+    private final Consumer<? super List<T>> onWindowBuilt;
+    private final CompletableFuture<B> result = new CompletableFuture<>();
+
+    StreamBuild(ModelBuilder<B> modelBuilder, Iterator<List<T>> windows, B buildContext,
+            Consumer<? super List<T>> onWindowBuilt) {
+        this.modelBuilder = modelBuilder;
+        this.windows = windows;
+        this.buildContext = buildContext;
+        this.onWindowBuilt = onWindowBuilt;
+    }
+
+    CompletableFuture<B> start() {
+        next();
+        return result;
+    }
+
+    private void next() {
+        while (!result.isDone()) {
+            List<T> window;
+            CompletableFuture<B> future;
+            try {
+                if (!windows.hasNext()) {
+                    result.complete(buildContext);
+                    return;
+                }
+                window = windows.next();
+                resetLazyData(buildContext);
+                future = modelBuilder.buildMultiAsync(window, buildContext);
+            } catch (Throwable e) {
+                result.completeExceptionally(e);
+                return;
+            }
+            if (!future.isDone()) {
+                future.whenComplete((it, e) -> {
+                    if (onBuilt(window, e)) {
+                        next();
+                    }
+                });
+                return;
+            }
+            if (!onBuilt(window, future.handle((it, e) -> e).join())) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * lazy namespaces read by former windows only have values of them.
+     */
+    static void resetLazyData(BuildContext buildContext) {
+        if (buildContext instanceof SimpleBuildContext) {
+            ((SimpleBuildContext) buildContext).resetLazyData();
+        }
+    }
+
+    /**
+     * @return if the stream goes on
+     */
+    private boolean onBuilt(List<T> window, Throwable error) {
+        if (error != null) {
+            result.completeExceptionally(error instanceof CompletionException && error.getCause() != null
+                    ? error.getCause()
+                    : error);
+            return false;
+        }
+        if (result.isDone()) {
+            return false;
+        }
+        try {
+            onWindowBuilt.accept(window);
+            return true;
+        } catch (Throwable e) {
+            result.completeExceptionally(e);
+            return false;
+        }
+    }
+}
@@ -0,0 +1,43 @@
+package com.github.phantomthief.model.builder.annotation;
+
+import static java.lang.annotation.ElementType.METHOD;
+import static java.lang.annotation.RetentionPolicy.SOURCE;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.Retention;
+import java.lang.annotation.Target;
+
+/**
+ * Marks a getter of a model returning values embedded in the model, a value extractor is generated for it by
+ * {@link ModelBuilderProcessor}, as
+ * {@link com.github.phantomthief.model.builder.impl.SimpleModelBuilder#extractValue} does.
+ * The getter can return a value, a collection of values, or a map of values by id.
+ *
+ * <pre>{@code
+ * @EmbeddedValue(Comment.class)
+ * public List<Comment> getComments() {...}
+ * }</pre>
+ *
+ * @author w.vela
+ */
+@Documented
+@Retention(SOURCE)
+@Target(METHOD)
+public @interface EmbeddedValue {
+
+    /**
+     * the value namespace, it's the type of values by default, and it's ignored if {@link #namespace()}
+     * is present.
+     */
+    Class<?> value() default void.class;
+
+    /**
+     * the value namespace of string.
+     */
+    String namespace() default "";
+
+    /**
+     * the method of value returning its id, it's not used for a map of values.
+     */
+    String id() default "getId";
+}
@@ -0,0 +1,347 @@
+package com.github.phantomthief.model.builder.annotation;
+
+import static javax.lang.model.element.Modifier.PRIVATE;
+import static javax.lang.model.element.Modifier.STATIC;
+import static javax.tools.Diagnostic.Kind.ERROR;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.AnnotationValue;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.type.WildcardType;
+import javax.lang.model.util.ElementFilter;
+import javax.lang.model.util.Elements;
+import javax.lang.model.util.Types;
+
+/**
+ * Generates extractors of models by {@link RefId} and {@link EmbeddedValue} at compile time. For each model type
+ * with annotated getters, a class named by the model with suffix {@code Extractors} is generated in the same
+ * package, which registers the extractors by
+ * {@code PostExtractors.registerTo(simpleModelBuilder)}.
+ *
+ * The generated extractors are plain classes calling the getters directly and pushing the results into the sinks
+ * (see {@link com.github.phantomthief.model.builder.extract.IdSink}), the type checks done by
+ * {@link com.github.phantomthief.model.builder.impl.SimpleModelBuilder#extractId} and
+ * {@link com.github.phantomthief.model.builder.impl.SimpleModelBuilder#extractValue} on each object are resolved
+ * at compile time, nothing is allocated per object, and primitive ids are pushed without boxing. They are still
+ * called through the extractor call site shared by all models in the build plan, as registered ones are.
+ *
+ * It's registered as a service of annotation processor, so it's enabled if this library is on the class path of
+ * javac.
+ *
+ * @author w.vela
+ */
+public class ModelBuilderProcessor extends AbstractProcessor {
+
+    private static final String SUFFIX = "Extractors";
+    private static final String MODEL_BUILDER = "com.github.phantomthief.model.builder.impl.SimpleModelBuilder";
+    private static final String BUILD_CONTEXT = "com.github.phantomthief.model.builder.context.BuildContext";
+    private static final String ID_SINK = "com.github.phantomthief.model.builder.extract.IdSink";
+    private static final String VALUE_SINK = "com.github.phantomthief.model.builder.extract.ValueSink";
+
+    private Elements elements;
+    private Types types;
+
+    @Override
+    public Set<String> getSupportedAnnotationTypes() {
+        Set<String> result = new HashSet<>();
+        result.add(RefId.class.getCanonicalName());
+        result.add(EmbeddedValue.class.getCanonicalName());
+        return result;
+    }
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+        elements = processingEnv.getElementUtils();
+        types = processingEnv.getTypeUtils();
+        Set<Element> annotated = new HashSet<>();
+        annotated.addAll(roundEnv.getElementsAnnotatedWith(RefId.class));
+        annotated.addAll(roundEnv.getElementsAnnotatedWith(EmbeddedValue.class));
+        // in source order
+        Map<TypeElement, List<ExecutableElement>> methodsByType = new LinkedHashMap<>();
+        for (Element element : annotated) {
+            TypeElement type = (TypeElement) element.getEnclosingElement();
+            if (!methodsByType.containsKey(type)) {
+                List<ExecutableElement> methods = new ArrayList<>();
+                for (ExecutableElement method : ElementFilter.methodsIn(type.getEnclosedElements())) {
+                    if (annotated.contains(method)) {
+                        methods.add(method);
+                    }
+                }
+                methodsByType.put(type, methods);
+            }
+        }
+        methodsByType.forEach(this::generate);
+        return true;
+    }
+
+    private void generate(TypeElement type, List<ExecutableElement> methods) {
+        for (Element e = type; e instanceof TypeElement; e = e.getEnclosingElement()) {
+            if (e.getModifiers().contains(PRIVATE)) {
+                error(type, "model type with extractors should not be private.");
+                return;
+            }
+        }
+        String modelType = types.erasure(type.asType()).toString();
+        String packageName = elements.getPackageOf(type).getQualifiedName().toString();
+        String simpleName = generatedSimpleName(type);
+
+        StringBuilder registrations = new StringBuilder();
+        StringBuilder extractors = new StringBuilder();
+        for (ExecutableElement method : methods) {
+            if (method.getModifiers().contains(PRIVATE) || method.getModifiers().contains(STATIC)
+                    || !method.getParameters().isEmpty() || method.getReturnType().getKind() == TypeKind.VOID) {
+                error(method, "extracting method should be a non-private instance getter.");
+                return;
+            }
+            String extractorName = Character.toUpperCase(method.getSimpleName().charAt(0))
+                    + method.getSimpleName().toString().substring(1);
+            boolean ok;
+            if (method.getAnnotation(RefId.class) != null) {
+                ok = appendRefId(method, modelType, extractorName + "Id", registrations, extractors);
+            } else {
+                ok = appendEmbeddedValue(method, modelType, extractorName + "Value", registrations, extractors);
+            }
+            if (!ok) {
+                return;
+            }
+        }
+
+        StringBuilder source = new StringBuilder();
+        if (!packageName.isEmpty()) {
+            source.append("package ").append(packageName).append(";\n\n");
+        }
+        source.append("/**\n")
+                .append(" * Extractors of {@link ").append(modelType).append("}, generated by ")
+                .append(getClass().getSimpleName()).append(".\n")
+                .append(" */\n")
+                .append("@SuppressWarnings({ \"rawtypes\", \"unchecked\" })\n")
+                .append("public final class ").append(simpleName).append(" {\n\n")
+                .append("    private ").append(simpleName).append("() {\n")
+                .append("        throw new UnsupportedOperationException();\n")
+                .append("    }\n\n")
+                .append("    public static <B extends ").append(BUILD_CONTEXT).append("> ").append(MODEL_BUILDER)
+                .append("<B> registerTo(").append(MODEL_BUILDER).append("<B> builder) {\n")
+                .append(registrations)
+                .append("        return builder;\n")
+                .append("    }\n")
+                .append(extractors)
+                .append("}\n");
+        String qualifiedName = packageName.isEmpty() ? simpleName : packageName + "." + simpleName;
+        try (Writer writer = processingEnv.getFiler().createSourceFile(qualifiedName, type).openWriter()) {
+            writer.write(source.toString());
+        } catch (IOException e) {
+            error(type, "fail to generate extractors: " + e);
+        }
+    }
+
+    private boolean appendRefId(ExecutableElement method, String modelType, String className,
+            StringBuilder registrations, StringBuilder extractors) {
+        String namespace = namespace(method, RefId.class, null);
+        if (namespace == null) {
+            error(method, "id namespace is required.");
+            return false;
+        }
+        TypeMirror returnType = method.getReturnType();
+        String getter = "model." + method.getSimpleName() + "()";
+        StringBuilder body = new StringBuilder();
+        if (returnType.getKind() == TypeKind.LONG) {
+            body.append("            sink.acceptLong(").append(getter).append(");\n");
+        } else if (returnType.getKind() == TypeKind.INT) {
+            body.append("            sink.acceptInt(").append(getter).append(");\n");
+        } else if (!returnType.getKind().isPrimitive() && isSubtype(returnType, Iterable.class)) {
+            body.append("            sink.acceptAll(").append(getter).append(");\n");
+        } else {
+            body.append("            sink.accept(").append(getter).append(");\n");
+        }
+        registrations.append("        builder.extractIdsTo(").append(modelType).append(".class, new ")
+                .append(className).append("(), ").append(namespace).append(");\n");
+        appendExtractor(extractors, className, modelType, ID_SINK, body);
+        return true;
+    }
+
+    private boolean appendEmbeddedValue(ExecutableElement method, String modelType, String className,
+            StringBuilder registrations, StringBuilder extractors) {
+        TypeMirror returnType = method.getReturnType();
+        String getter = "model." + method.getSimpleName() + "()";
+        StringBuilder body = new StringBuilder();
+        TypeMirror valueType;
+        if (returnType.getKind().isPrimitive()) {
+            error(method, "embedded value should not be primitive.");
+            return false;
+        } else if (isSubtype(returnType, Map.class)) {
+            valueType = typeArgument(returnType, Map.class, 1);
+            body.append("            java.util.Map<?, ?> values = ").append(getter).append(";\n")
+                    .append("            if (values != null) {\n")
+                    .append("                for (java.util.Map.Entry<?, ?> entry : values.entrySet()) {\n")
+                    .append("                    sink.accept(entry.getKey(), entry.getValue());\n")
+                    .append("                }\n")
+                    .append("            }\n");
+        } else {
+            boolean iterable = isSubtype(returnType, Iterable.class);
+            valueType = iterable ? typeArgument(returnType, Iterable.class, 0) : returnType;
+            String idGetter = idGetter(method, valueType);
+            if (idGetter == null) {
+                return false;
+            }
+            String valueTypeName = types.erasure(valueType).toString();
+            if (iterable) {
+                body.append("            Iterable<? extends ").append(valueTypeName)
+                        .append("> values = ").append(getter).append(";\n")
+                        .append("            if (values != null) {\n")
+                        .append("                for (").append(valueTypeName).append(" value : values) {\n")
+                        .append("                    if (value != null) {\n")
+                        .append("                        sink.accept(value.").append(idGetter).append("(), value);\n")
+                        .append("                    }\n")
+                        .append("                }\n")
+                        .append("            }\n");
+            } else {
+                body.append("            ").append(valueTypeName).append(" value = ").append(getter).append(";\n")
+                        .append("            if (value != null) {\n")
+                        .append("                sink.accept(value.").append(idGetter).append("(), value);\n")
+                        .append("            }\n");
+            }
+        }
+        String defaultNamespace = valueType == null || valueType.getKind() != TypeKind.DECLARED ? null
+                : types.erasure(valueType).toString() + ".class";
+        String namespace = namespace(method, EmbeddedValue.class, defaultNamespace);
+        if (namespace == null) {
+            error(method, "value namespace is required, as the type of values is unknown.");
+            return false;
+        }
+        registrations.append("        builder.extractValuesTo(").append(modelType).append(".class, new ")
+                .append(className).append("(), ").append(namespace).append(");\n");
+        appendExtractor(extractors, className, modelType, VALUE_SINK, body);
+        return true;
+    }
+
+    private static void appendExtractor(StringBuilder extractors, String className, String modelType,
+            String sinkType, StringBuilder body) {
+        extractors.append("\n")
+                .append("    private static final class ").append(className)
+                .append(" implements java.util.function.BiConsumer<").append(modelType).append(", ")
+                .append(sinkType).append("> {\n\n")
+                .append("        @Override\n")
+                .append("        public void accept(").append(modelType).append(" model, ").append(sinkType)
+                .append(" sink) {\n")
+                .append(body)
+                .append("        }\n")
+                .append("    }\n");
+    }
+
+    /**
+     * @return the name of a non-private, no-arg instance method of the value, or null if it's not found.
+     */
+    private String idGetter(ExecutableElement method, TypeMirror valueType) {
+        String id = method.getAnnotation(EmbeddedValue.class).id();
+        if (valueType != null && valueType.getKind() == TypeKind.DECLARED) {
+            TypeElement valueElement = (TypeElement) types.asElement(valueType);
+            for (ExecutableElement member : ElementFilter.methodsIn(elements.getAllMembers(valueElement))) {
+                if (member.getSimpleName().contentEquals(id) && member.getParameters().isEmpty()
+                        && !member.getModifiers().contains(PRIVATE) && !member.getModifiers().contains(STATIC)
+                        && member.getReturnType().getKind() != TypeKind.VOID) {
+                    return id;
+                }
+            }
+        }
+        error(method, "id method [" + id + "] is not found in the type of values: " + valueType);
+        return null;
+    }
+
+    /**
+     * @return the namespace expression of given annotation, or defaultNamespace if it's absent.
+     */
+    private String namespace(ExecutableElement method, Class<?> annotationType, String defaultNamespace) {
+        for (AnnotationMirror mirror : method.getAnnotationMirrors()) {
+            if (!((TypeElement) mirror.getAnnotationType().asElement()).getQualifiedName()
+                    .contentEquals(annotationType.getCanonicalName())) {
+                continue;
+            }
+            String result = defaultNamespace;
+            for (Map.Entry<? extends ExecutableElement, ? extends AnnotationValue> entry : mirror
+                    .getElementValues().entrySet()) {
+                String name = entry.getKey().getSimpleName().toString();
+                Object value = entry.getValue().getValue();
+                if (name.equals("namespace") && !value.toString().isEmpty()) {
+                    return elements.getConstantExpression(value);
+                }
+                if (name.equals("value") && value instanceof TypeMirror
+                        && ((TypeMirror) value).getKind() != TypeKind.VOID) {
+                    result = types.erasure((TypeMirror) value).toString() + ".class";
+                }
+            }
+            return result;
+        }
+        return defaultNamespace;
+    }
+
+    private boolean isSubtype(TypeMirror type, Class<?> target) {
+        return types.isAssignable(types.erasure(type), types.erasure(declaredType(target)));
+    }
+
+    private TypeMirror declaredType(Class<?> type) {
+        return elements.getTypeElement(type.getCanonicalName()).asType();
+    }
+
+    /**
+     * @return the type argument of given supertype, or null if it's raw.
+     */
+    private TypeMirror typeArgument(TypeMirror type, Class<?> target, int index) {
+        if (type.getKind() != TypeKind.DECLARED) {
+            return null;
+        }
+        TypeElement targetElement = elements.getTypeElement(target.getCanonicalName());
+        if (types.isSameType(types.erasure(type), types.erasure(targetElement.asType()))) {
+            List<? extends TypeMirror> arguments = ((DeclaredType) type).getTypeArguments();
+            if (arguments.size() <= index) {
+                return null;
+            }
+            TypeMirror argument = arguments.get(index);
+            if (argument.getKind() == TypeKind.WILDCARD) {
+                return ((WildcardType) argument).getExtendsBound();
+            }
+            return argument;
+        }
+        for (TypeMirror supertype : types.directSupertypes(type)) {
+            if (isSubtype(supertype, target)) {
+                return typeArgument(supertype, target, index);
+            }
+        }
+        return null;
+    }
+
+    private static String generatedSimpleName(TypeElement type) {
+        List<String> names = new ArrayList<>();
+        for (Element e = type; e instanceof TypeElement; e = e.getEnclosingElement()) {
+            names.add(e.getSimpleName().toString());
+        }
+        Collections.reverse(names);
+        return String.join("_", names) + SUFFIX;
+    }
+
+    private void error(Element element, String message) {
+        processingEnv.getMessager().printMessage(ERROR, message, element);
+    }
+}
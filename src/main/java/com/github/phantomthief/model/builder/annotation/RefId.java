@@ -0,0 +1,36 @@
+package com.github.phantomthief.model.builder.annotation;
+
+import static java.lang.annotation.ElementType.METHOD;
+import static java.lang.annotation.RetentionPolicy.SOURCE;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.Retention;
+import java.lang.annotation.Target;
+
+/**
+ * Marks a getter of a model returning ids referenced by the model, an id extractor is generated for it by
+ * {@link ModelBuilderProcessor}, as {@link com.github.phantomthief.model.builder.impl.SimpleModelBuilder#extractId}
+ * does. The getter can return an id, or a collection of ids.
+ *
+ * <pre>{@code
+ * @RefId(User.class)
+ * public int getUserId() {...}
+ * }</pre>
+ *
+ * @author w.vela
+ */
+@Documented
+@Retention(SOURCE)
+@Target(METHOD)
+public @interface RefId {
+
+    /**
+     * the id namespace, it's ignored if {@link #namespace()} is present.
+     */
+    Class<?> value() default void.class;
+
+    /**
+     * the id namespace of string.
+     */
+    String namespace() default "";
+}
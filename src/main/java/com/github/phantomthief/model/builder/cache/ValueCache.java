@@ -0,0 +1,222 @@
+package com.github.phantomthief.model.builder.cache;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkState;
+import static java.util.concurrent.CompletableFuture.completedFuture;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+/**
+ * A cache of built values shared by all builds, registered on a value namespace by
+ * {@link com.github.phantomthief.model.builder.impl.SimpleModelBuilder#cacheValue}.
+ *
+ * Only ids missed in cache are passed to the value builder, in a single batch. Ids the builder returns
+ * nothing for can be cached as negative entries by {@link Builder#cacheNegative}.
+ *
+ * <pre>{@code
+ * ValueCache userCache = ValueCache.newBuilder()
+ *     .maximumSize(10000)
+ *     .expireAfterWrite(1, MINUTES)
+ *     .cacheNegative(10, SECONDS)
+ *     .build();
+ * }</pre>
+ *
+ * @author w.vela
+ */
+public final class ValueCache {
+
+    private final Cache<Object, Object> values;
+    // ids without value, nullable
+    private final Cache<Object, Boolean> negatives;
+    private final LongAdder hitCount = new LongAdder();
+    private final LongAdder missCount = new LongAdder();
+
+    private ValueCache(Builder builder) {
+        this.values = builder.newCache(builder.expireAfterWriteNanos);
+        if (builder.negativeExpireAfterWriteNanos > 0) {
+            this.negatives = builder.newCache(builder.negativeExpireAfterWriteNanos);
+        } else {
+            this.negatives = null;
+        }
+    }
+
+    public static Builder newBuilder() {
+        return new Builder();
+    }
+
+    /**
+     * @return cached values of given ids, and values of missed ids loaded by the loader in one call.
+     */
+    public Map<Object, Object> getAll(Collection<?> ids,
+            Function<Collection<Object>, Map<Object, Object>> loader) {
+        Map<Object, Object> result = new HashMap<>();
+        List<Object> missed = lookup(ids, result);
+        if (!missed.isEmpty()) {
+            cache(missed, loader.apply(missed), result);
+        }
+        return result;
+    }
+
+    /**
+     * same as {@link #getAll}, for asynchronous loader.
+     */
+    public CompletableFuture<Map<Object, Object>> getAllAsync(Collection<?> ids,
+            Function<Collection<Object>, ? extends CompletionStage<Map<Object, Object>>> loader) {
+        Map<Object, Object> result = new HashMap<>();
+        List<Object> missed = lookup(ids, result);
+        if (missed.isEmpty()) {
+            return completedFuture(result);
+        }
+        return loader.apply(missed).thenApply(loaded -> {
+            cache(missed, loaded, result);
+            return result;
+        }).toCompletableFuture();
+    }
+
+    private List<Object> lookup(Collection<?> ids, Map<Object, Object> result) {
+        List<Object> missed = new ArrayList<>();
+        for (Object id : ids) {
+            Object value = values.getIfPresent(id);
+            if (value != null) {
+                result.put(id, value);
+            } else if (negatives == null || negatives.getIfPresent(id) == null) {
+                missed.add(id);
+            }
+        }
+        hitCount.add(ids.size() - missed.size());
+        missCount.add(missed.size());
+        return missed;
+    }
+
+    private void cache(List<Object> missed, Map<Object, Object> loaded, Map<Object, Object> result) {
+        if (loaded != null) {
+            loaded.forEach((id, value) -> {
+                if (value != null) {
+                    values.put(id, value);
+                    result.put(id, value);
+                }
+            });
+        }
+        if (negatives != null) {
+            for (Object id : missed) {
+                if (!result.containsKey(id)) {
+                    negatives.put(id, true);
+                }
+            }
+        }
+    }
+
+    public Object getIfPresent(Object id) {
+        return values.getIfPresent(id);
+    }
+
+    public void invalidate(Object id) {
+        values.invalidate(id);
+        if (negatives != null) {
+            negatives.invalidate(id);
+        }
+    }
+
+    public void invalidateAll(Iterable<?> ids) {
+        values.invalidateAll(ids);
+        if (negatives != null) {
+            negatives.invalidateAll(ids);
+        }
+    }
+
+    public void invalidateAll() {
+        values.invalidateAll();
+        if (negatives != null) {
+            negatives.invalidateAll();
+        }
+    }
+
+    /**
+     * @return count of ids served by cache, including negative entries.
+     */
+    public long hitCount() {
+        return hitCount.sum();
+    }
+
+    /**
+     * @return count of ids passed to value builders.
+     */
+    public long missCount() {
+        return missCount.sum();
+    }
+
+    public double hitRate() {
+        long hit = hitCount();
+        long requests = hit + missCount();
+        return requests == 0 ? 1.0 : (double) hit / requests;
+    }
+
+    public long size() {
+        return values.size();
+    }
+
+    @Override
+    public String toString() {
+        return "ValueCache{size=" + size() + ", hitCount=" + hitCount() + ", missCount=" + missCount() + "}";
+    }
+
+    public static final class Builder {
+
+        private long maximumSize = -1;
+        private long expireAfterWriteNanos = -1;
+        private long negativeExpireAfterWriteNanos = -1;
+
+        private Builder() {
+        }
+
+        public Builder maximumSize(long maximumSize) {
+            checkArgument(maximumSize >= 0);
+            this.maximumSize = maximumSize;
+            return this;
+        }
+
+        public Builder expireAfterWrite(long duration, TimeUnit unit) {
+            checkArgument(duration >= 0);
+            this.expireAfterWriteNanos = unit.toNanos(duration);
+            return this;
+        }
+
+        /**
+         * cache ids the value builder returns no value for, usually with a shorter ttl than values.
+         */
+        public Builder cacheNegative(long duration, TimeUnit unit) {
+            checkArgument(duration > 0);
+            this.negativeExpireAfterWriteNanos = unit.toNanos(duration);
+            return this;
+        }
+
+        private <V> Cache<Object, V> newCache(long expireAfterWriteNanos) {
+            CacheBuilder<Object, Object> builder = CacheBuilder.newBuilder();
+            if (maximumSize >= 0) {
+                builder.maximumSize(maximumSize);
+            }
+            if (expireAfterWriteNanos >= 0) {
+                builder.expireAfterWrite(expireAfterWriteNanos, TimeUnit.NANOSECONDS);
+            }
+            return builder.build();
+        }
+
+        public ValueCache build() {
+            checkState(maximumSize >= 0 || expireAfterWriteNanos >= 0,
+                    "value cache should be bounded by maximumSize or expireAfterWrite.");
+            return new ValueCache(this);
+        }
+    }
+}
@@ -2,6 +2,8 @@ package com.github.phantomthief.model.builder.context;
 
 import java.util.Map;
 
+import com.github.phantomthief.model.builder.util.LongHashMap;
+
 /**
  * @author w.vela
  */
@@ -13,5 +15,22 @@ public interface BuildContext {
 
     <K, V> Map<K, V> getData(Object namespace);
 
+    /**
+     * lookup a value by primitive id, it never boxes if the namespace is a long id namespace.
+     * Other namespaces are looked up by {@link Long} key, then by {@link Integer} key if the id fits in an int.
+     */
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    default <V> V getData(Object namespace, long id) {
+        Map<Object, V> data = getData(namespace);
+        if (data instanceof LongHashMap) {
+            return ((LongHashMap<V>) (Map) data).get(id);
+        }
+        V value = data.get(id);
+        if (value == null && id == (int) id) {
+            value = data.get((int) id);
+        }
+        return value;
+    }
+
     void merge(BuildContext buildContext);
 }
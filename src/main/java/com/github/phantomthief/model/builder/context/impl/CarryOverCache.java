@@ -0,0 +1,180 @@
+package com.github.phantomthief.model.builder.context.impl;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import java.util.AbstractMap;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.github.phantomthief.model.builder.util.LongHashMap;
+
+/**
+ * The most recently used values carried from a build context to the next one, for builds window by window
+ * (see {@link com.github.phantomthief.model.builder.ModelBuilder#buildWindows}).
+ *
+ * Values carried into a context are not built again. A carried value is used if it's looked up (by the build
+ * or by views) in the context, it's evicted if it's unused while more than maxSizePerNamespace other values of
+ * its namespace are built or used. Keys of long id namespaces stay longs, so they're looked up by any integral
+ * key as by {@link LongHashMap}. It's not thread safe.
+ *
+ * @author w.vela
+ */
+public final class CarryOverCache {
+
+    private final int maxSizePerNamespace;
+    private final Map<Object, LinkedHashMap<Object, Object>> values = new HashMap<>();
+    private final Set<Object> longNamespaces = new HashSet<>();
+
+    public CarryOverCache(int maxSizePerNamespace) {
+        checkArgument(maxSizePerNamespace > 0);
+        this.maxSizePerNamespace = maxSizePerNamespace;
+    }
+
+    /**
+     * put carried values into given context, it should be called before the context is built.
+     */
+    public void carryInto(SimpleBuildContext buildContext) {
+        values.forEach((namespace, namespaceValues) -> buildContext.getDatas().put(namespace,
+                longNamespaces.contains(namespace) ? new CarriedLongData(namespaceValues)
+                        : new CarriedData(namespaceValues)));
+    }
+
+    /**
+     * update carried values by given context, it should be called after the context is built and used.
+     */
+    public void update(SimpleBuildContext buildContext) {
+        buildContext.getDatas().forEach((namespace, data) -> {
+            if (data instanceof LongHashMap || data instanceof CarriedLongData) {
+                longNamespaces.add(namespace);
+            }
+            if (data.isEmpty()) {
+                return;
+            }
+            LinkedHashMap<Object, Object> namespaceValues = values.computeIfAbsent(namespace,
+                    it -> new LinkedHashMap<Object, Object>(16, 0.75f, true) {
+
+                        @Override
+                        protected boolean removeEldestEntry(Entry<Object, Object> eldest) {
+                            return size() > maxSizePerNamespace;
+                        }
+                    });
+            if (data instanceof CarriedData) {
+                CarriedData carried = (CarriedData) data;
+                updateCarried(namespaceValues, carried, carried.carriedKeys, carried.usedKeys);
+            } else if (data instanceof CarriedLongData) {
+                CarriedLongData carried = (CarriedLongData) data;
+                updateCarried(namespaceValues, carried, carried.carriedKeys, carried.usedKeys);
+            } else {
+                namespaceValues.putAll(data);
+            }
+        });
+    }
+
+    private static void updateCarried(LinkedHashMap<Object, Object> namespaceValues, Map<?, ?> data,
+            Set<?> carriedKeys, Set<?> usedKeys) {
+        for (Entry<?, ?> entry : data.entrySet()) {
+            if (!carriedKeys.contains(entry.getKey())) {
+                namespaceValues.put(entry.getKey(), entry.getValue());
+            }
+        }
+        for (Object key : usedKeys) {
+            namespaceValues.get(key);
+        }
+    }
+
+    /**
+     * the data of a namespace with carried values, which records carried keys looked up.
+     */
+    private static final class CarriedData extends ConcurrentHashMap<Object, Object> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final Set<Object> carriedKeys;
+        private final Set<Object> usedKeys = ConcurrentHashMap.newKeySet();
+
+        private CarriedData(Map<Object, Object> carried) {
+            super(carried);
+            this.carriedKeys = new HashSet<>(carried.keySet());
+        }
+
+        @Override
+        public Object get(Object key) {
+            Object value = super.get(key);
+            if (value != null && carriedKeys.contains(key)) {
+                usedKeys.add(key);
+            }
+            return value;
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            return get(key) != null;
+        }
+    }
+
+    /**
+     * the data of a long id namespace with carried values, stored by {@link LongHashMap}.
+     */
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    private static final class CarriedLongData extends AbstractMap<Object, Object> {
+
+        private final LongHashMap<Object> data = new LongHashMap<>();
+        private final Set<Long> carriedKeys = new HashSet<>();
+        private final Set<Long> usedKeys = ConcurrentHashMap.newKeySet();
+
+        private CarriedLongData(Map<Object, Object> carried) {
+            carried.forEach((key, value) -> {
+                long id = ((Number) key).longValue();
+                data.put(id, value);
+                carriedKeys.add(id);
+            });
+        }
+
+        @Override
+        public Object get(Object key) {
+            Object value = data.get(key);
+            if (value != null) {
+                Long id = ((Number) key).longValue();
+                if (carriedKeys.contains(id)) {
+                    usedKeys.add(id);
+                }
+            }
+            return value;
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            return get(key) != null;
+        }
+
+        @Override
+        public Object put(Object key, Object value) {
+            return data.put(((Number) key).longValue(), value);
+        }
+
+        @Override
+        public void putAll(Map<?, ?> m) {
+            data.putAll((Map) m);
+        }
+
+        @Override
+        public Object remove(Object key) {
+            return data.remove(key);
+        }
+
+        @Override
+        public Set<Entry<Object, Object>> entrySet() {
+            return (Set) data.entrySet();
+        }
+
+        @Override
+        public int size() {
+            return data.size();
+        }
+    }
+}
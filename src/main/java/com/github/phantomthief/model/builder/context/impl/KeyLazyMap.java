@@ -0,0 +1,218 @@
+package com.github.phantomthief.model.builder.context.impl;
+
+import static com.google.common.base.Throwables.throwIfUnchecked;
+import static java.util.Collections.singleton;
+import static java.util.Collections.unmodifiableMap;
+
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.BiFunction;
+
+import com.github.phantomthief.model.builder.context.BuildContext;
+import com.github.phantomthief.model.builder.util.LongHashMap;
+
+/**
+ * The data of a lazy namespace built by keys, only keys read by {@link #get} or {@link #containsKey} are built.
+ *
+ * A key missed is built with all keys given by {@link #prefetch} before by one builder call, so views can declare
+ * the keys they are going to read and get them in batch. Keys not in source namespace are never built.
+ * Iterating the map (or calling {@link #size}) builds all keys of source namespace.
+ *
+ * Each key is built once (single-flight): a miss builds its key with the pending prefetched ones in the reader
+ * thread, and no lock is held during the builder call, so a read of a built key never waits, and a read of a key
+ * in building waits for the call building it only. A failed call is retried by the next read of its keys.
+ *
+ * If the source namespace is a long namespace (see {@link LongHashMap}), keys are normalized to {@link Long},
+ * so reading by an {@link Integer} or a {@link Long} gets the same entry.
+ *
+ * @author w.vela
+ */
+@SuppressWarnings({ "unchecked", "rawtypes" })
+public class KeyLazyMap<K, V> extends AbstractMap<K, V> {
+
+    private final BuildContext buildContext;
+    private final Object namespace;
+    private final Object sourceNamespace;
+    private final BiFunction<BuildContext, Collection<K>, Map<K, ?>> builder;
+    private final boolean longKeys;
+
+    private final Map<Object, V> values;
+    // key=>the batch building (or built) it, keys of a failed batch are removed
+    private final ConcurrentMap<Object, Batch> batches = new ConcurrentHashMap<>();
+    // guarded by this, prefetched keys not in any batch yet
+    private final Set<Object> pendingKeys = new LinkedHashSet<>();
+    private volatile boolean allBuilt;
+
+    public KeyLazyMap(BuildContext buildContext, Object namespace, Object sourceNamespace,
+            BiFunction<BuildContext, Collection<K>, Map<K, ?>> builder) {
+        this.buildContext = buildContext;
+        this.namespace = namespace;
+        this.sourceNamespace = sourceNamespace;
+        this.builder = builder;
+        this.longKeys = buildContext.getData(sourceNamespace) instanceof LongHashMap;
+        this.values = longKeys ? (Map) new LongHashMap<V>() : new ConcurrentHashMap<>();
+    }
+
+    /**
+     * build given keys with the next key missed, it doesn't call the builder itself.
+     */
+    public void prefetch(Collection<? extends K> keys) {
+        if (allBuilt) {
+            return;
+        }
+        synchronized (this) {
+            for (K key : keys) {
+                if (key != null) {
+                    Object normalized = normalize(key);
+                    if (!batches.containsKey(normalized)) {
+                        pendingKeys.add(normalized);
+                    }
+                }
+            }
+        }
+    }
+
+    @Override
+    public V get(Object key) {
+        ensureBuilt(key);
+        return key == null ? null : values.get(key);
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        ensureBuilt(key);
+        return key != null && values.containsKey(key);
+    }
+
+    @Override
+    public Set<Entry<K, V>> entrySet() {
+        ensureAllBuilt();
+        return unmodifiableMap((Map<K, V>) values).entrySet();
+    }
+
+    private Object normalize(Object key) {
+        if (longKeys && (key instanceof Integer || key instanceof Short || key instanceof Byte)) {
+            return ((Number) key).longValue();
+        }
+        return key;
+    }
+
+    private void ensureBuilt(Object key) {
+        if (key == null || allBuilt) {
+            return;
+        }
+        Object normalized = normalize(key);
+        Batch batch = batches.get(normalized);
+        if (batch != null) {
+            await(batch);
+        } else {
+            claim(singleton(normalized)).forEach(this::await);
+        }
+    }
+
+    private void ensureAllBuilt() {
+        if (allBuilt) {
+            return;
+        }
+        Set<Object> keys = buildContext.getData(sourceNamespace).keySet();
+        claim(keys).forEach(this::await);
+        allBuilt = true;
+    }
+
+    /**
+     * add given keys and the prefetched ones to a new batch and build it, unless they are in a batch already.
+     *
+     * @return the batches of given keys
+     */
+    private Set<Batch> claim(Collection<Object> keys) {
+        Set<Batch> result = new LinkedHashSet<>();
+        Batch batch = new Batch();
+        synchronized (this) {
+            for (Object key : keys) {
+                Object normalized = normalize(key);
+                Batch existing = batches.putIfAbsent(normalized, batch);
+                if (existing == null) {
+                    batch.keys.add(normalized);
+                    result.add(batch);
+                } else {
+                    result.add(existing);
+                }
+            }
+            if (!batch.keys.isEmpty()) {
+                for (Object pendingKey : pendingKeys) {
+                    if (batches.putIfAbsent(pendingKey, batch) == null) {
+                        batch.keys.add(pendingKey);
+                    }
+                }
+                pendingKeys.clear();
+            }
+        }
+        if (!batch.keys.isEmpty()) {
+            build(batch);
+        }
+        return result;
+    }
+
+    private void build(Batch batch) {
+        batch.building = Thread.currentThread();
+        try {
+            Map<Object, Object> source = buildContext.getData(sourceNamespace);
+            List<K> toBuild = new ArrayList<>(batch.keys.size());
+            for (Object key : batch.keys) {
+                if (source.containsKey(key)) {
+                    toBuild.add((K) key);
+                }
+            }
+            if (!toBuild.isEmpty()) {
+                Map<K, ?> result = builder.apply(buildContext, toBuild);
+                if (result != null) {
+                    result.forEach((key, value) -> {
+                        if (key != null && value != null) {
+                            values.put(normalize(key), (V) value);
+                        }
+                    });
+                }
+            }
+            batch.future.complete(null);
+        } catch (Throwable e) {
+            batch.keys.forEach(key -> batches.remove(key, batch));
+            batch.future.completeExceptionally(e);
+        } finally {
+            batch.building = null;
+        }
+    }
+
+    private void await(Batch batch) {
+        if (!batch.future.isDone() && batch.building == Thread.currentThread()) {
+            throw new IllegalStateException("lazy namespace [" + namespace + "] depends on itself.");
+        }
+        try {
+            batch.future.join();
+        } catch (CompletionException e) {
+            throwIfUnchecked(e.getCause());
+            throw e;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "KeyLazyMap{namespace=" + namespace + ", built=" + values + "}";
+    }
+
+    private static final class Batch {
+
+        private final List<Object> keys = new ArrayList<>();
+        private final CompletableFuture<Void> future = new CompletableFuture<>();
+        // the thread calling the builder
+        private volatile Thread building;
+    }
+}
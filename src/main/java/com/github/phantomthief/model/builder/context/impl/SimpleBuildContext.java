@@ -1,14 +1,26 @@
 package com.github.phantomthief.model.builder.context.impl;
 
+import static com.google.common.base.Throwables.throwIfUnchecked;
 import static org.apache.commons.lang3.builder.ToStringBuilder.reflectionToString;
 import static org.apache.commons.lang3.builder.ToStringStyle.SHORT_PREFIX_STYLE;
 
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.function.Function;
 
 import com.github.phantomthief.model.builder.context.BuildContext;
+import com.github.phantomthief.model.builder.trace.BuildTrace;
+import com.github.phantomthief.model.builder.util.LongHashMap;
 import com.github.phantomthief.model.builder.util.MergeUtils;
 
 /**
@@ -19,8 +31,13 @@ import com.github.phantomthief.model.builder.util.MergeUtils;
 public class SimpleBuildContext implements BuildContext {
 
     private final ConcurrentMap<Object, Map<Object, Object>> datas;
-    private final ConcurrentMap<Object, Map<Object, Object>> lazyDatas = new ConcurrentHashMap<>();
+    private final ConcurrentMap<Object, LazyData> lazyDatas = new ConcurrentHashMap<>();
     private final ConcurrentMap<Object, Function<BuildContext, Map<Object, Object>>> lazyBuilders = new ConcurrentHashMap<>();
+    private final Set<Object> degradedNamespaces = ConcurrentHashMap.newKeySet();
+    // by System.nanoTime()
+    private volatile long deadlineNanos;
+    private volatile boolean hasDeadline;
+    private volatile BuildTrace trace;
 
     public SimpleBuildContext() {
         this(new ConcurrentHashMap<>());
@@ -35,12 +52,17 @@ public class SimpleBuildContext implements BuildContext {
     public <K, V> Map<K, V> getData(Object namespace) {
         Function<BuildContext, Map<Object, Object>> lazyBuilder = lazyBuilders.get(namespace);
         if (lazyBuilder != null) {
-            return computeIfAbsent(lazyDatas, namespace, ns -> lazyBuilder.apply(this));
+            return (Map<K, V>) materialize(namespace, lazyBuilder);
         } else {
             return computeIfAbsent(datas, namespace, ns -> new ConcurrentHashMap<>());
         }
     }
 
+    // eager namespaces only
+    ConcurrentMap<Object, Map<Object, Object>> getDatas() {
+        return datas;
+    }
+
     /**
      * Workaround to fix ConcurrentHashMap stuck bug when call {@link ConcurrentHashMap#computeIfAbsent} recursively.
      * see https://bugs.openjdk.java.net/browse/JDK-8062841.
@@ -50,16 +72,142 @@ public class SimpleBuildContext implements BuildContext {
         Map<Object, Object> value = map.get(key);
         if (value == null) {
             value = function.apply(key);
-            map.put(key, value);
+            Map<Object, Object> existing = map.putIfAbsent(key, value);
+            if (existing != null) {
+                value = existing;
+            }
         }
         return (Map<K, V>) value;
     }
 
+    /**
+     * a lazy namespace is built once, by the first reader. concurrent readers wait for it, and only them.
+     * a failed build is not kept, so the next reader retries.
+     * it's not {@link ConcurrentHashMap#computeIfAbsent}, so a lazy builder can read other lazy namespaces.
+     */
+    private Map<Object, Object> materialize(Object namespace,
+            Function<BuildContext, Map<Object, Object>> lazyBuilder) {
+        LazyData lazyData = lazyDatas.get(namespace);
+        if (lazyData == null) {
+            LazyData created = new LazyData();
+            lazyData = lazyDatas.putIfAbsent(namespace, created);
+            if (lazyData == null) {
+                lazyData = created;
+            }
+        }
+        // a prefetched build still queued is taken over by the reader, so a prefetching task never waits for
+        // another one queued behind it on the same executor.
+        lazyData.build(this, namespace, lazyBuilder);
+        return lazyData.get(namespace);
+    }
+
+    /**
+     * start building a lazy namespace on given executor if it's not built yet, readers wait for it then.
+     * a reader before the task starts builds it itself, and the task is skipped.
+     * it's built in caller thread if the executor rejects.
+     */
+    public void prefetchLazy(Object namespace, Executor executor) {
+        Function<BuildContext, Map<Object, Object>> lazyBuilder = lazyBuilders.get(namespace);
+        if (lazyBuilder == null || lazyDatas.containsKey(namespace)) {
+            return;
+        }
+        LazyData created = new LazyData();
+        if (lazyDatas.putIfAbsent(namespace, created) != null) {
+            return;
+        }
+        try {
+            executor.execute(() -> created.build(this, namespace, lazyBuilder));
+        } catch (RejectedExecutionException e) {
+            created.build(this, namespace, lazyBuilder);
+        }
+    }
+
+    /**
+     * drop all lazy namespaces built (or being built), they are built again by next readers with current data.
+     * a streaming build calls it before each window, so lazy values of later windows are not missing.
+     */
+    public void resetLazyData() {
+        lazyDatas.clear();
+    }
+
+    /**
+     * build given keys of a key level lazy namespace with the next key missed (see {@link KeyLazyMap#prefetch}).
+     * it's ignored for other namespaces.
+     */
+    public void prefetchKeys(Object namespace, Collection<?> keys) {
+        if (lazyBuilders.containsKey(namespace)) {
+            Map<Object, Object> data = getData(namespace);
+            if (data instanceof KeyLazyMap) {
+                ((KeyLazyMap<Object, Object>) data).prefetch(keys);
+            }
+        }
+    }
+
     public void setupLazyNodeData(Object namespace,
             Function<BuildContext, Map<Object, Object>> lazyBuildFunction) {
         lazyBuilders.put(namespace, lazyBuildFunction);
     }
 
+    /**
+     * store the data of given namespace by {@link LongHashMap}, if it's not initialized yet.
+     */
+    @SuppressWarnings("rawtypes")
+    public void setupLongNamespace(Object namespace) {
+        if (!lazyBuilders.containsKey(namespace)) {
+            datas.putIfAbsent(namespace, (Map) new LongHashMap<>());
+        }
+    }
+
+    /**
+     * all value builders called after given timeout are timed out. a timed out builder of an optional namespace
+     * leaves the namespace empty (see {@link #isDegraded}), otherwise the build fails.
+     */
+    public SimpleBuildContext withTimeout(long timeout, TimeUnit unit) {
+        this.deadlineNanos = System.nanoTime() + unit.toNanos(timeout);
+        this.hasDeadline = true;
+        return this;
+    }
+
+    /**
+     * @return remaining nanos before the deadline, or {@link Long#MAX_VALUE} if there is no deadline.
+     */
+    public long remainingNanos() {
+        return hasDeadline ? deadlineNanos - System.nanoTime() : Long.MAX_VALUE;
+    }
+
+    /**
+     * mark an optional namespace degraded, whose values are missing because of builder failure or timeout.
+     */
+    public void markDegraded(Object namespace) {
+        degradedNamespaces.add(namespace);
+    }
+
+    public boolean isDegraded(Object namespace) {
+        return degradedNamespaces.contains(namespace);
+    }
+
+    public Set<Object> degradedNamespaces() {
+        return Collections.unmodifiableSet(degradedNamespaces);
+    }
+
+    /**
+     * record the trace of following builds, no matter it's sampled or not.
+     * it takes effect only if a {@link com.github.phantomthief.model.builder.trace.BuildTracer} is registered.
+     */
+    public synchronized SimpleBuildContext enableTrace() {
+        if (trace == null) {
+            trace = new BuildTrace();
+        }
+        return this;
+    }
+
+    /**
+     * @return null if tracing is not enabled nor sampled.
+     */
+    public BuildTrace trace() {
+        return trace;
+    }
+
     @Override
     public void merge(BuildContext buildContext) {
         if (buildContext instanceof SimpleBuildContext) {
@@ -67,6 +215,7 @@ public class SimpleBuildContext implements BuildContext {
             other.datas.forEach(
                     (namespace, values) -> datas.merge(namespace, values, MergeUtils::merge));
             other.lazyBuilders.forEach(lazyBuilders::putIfAbsent);
+            degradedNamespaces.addAll(other.degradedNamespaces);
             lazyBuilders.keySet().forEach(key -> {
                 datas.remove(key);
                 lazyDatas.remove(key);
@@ -76,6 +225,46 @@ public class SimpleBuildContext implements BuildContext {
         }
     }
 
+    private final class LazyData {
+
+        private final CompletableFuture<Map<Object, Object>> future = new CompletableFuture<>();
+        // if the build is started, by a reader or a prefetching task
+        private final AtomicBoolean started = new AtomicBoolean();
+        // the thread running the lazy builder
+        private volatile Thread building;
+
+        /**
+         * build the namespace if no one started it yet, otherwise it does nothing.
+         */
+        private void build(SimpleBuildContext buildContext, Object namespace,
+                Function<BuildContext, Map<Object, Object>> lazyBuilder) {
+            if (started.get() || !started.compareAndSet(false, true)) {
+                return;
+            }
+            building = Thread.currentThread();
+            try {
+                future.complete(lazyBuilder.apply(buildContext));
+            } catch (Throwable e) {
+                lazyDatas.remove(namespace, this);
+                future.completeExceptionally(e);
+            } finally {
+                building = null;
+            }
+        }
+
+        private Map<Object, Object> get(Object namespace) {
+            if (!future.isDone() && building == Thread.currentThread()) {
+                throw new IllegalStateException("lazy namespace [" + namespace + "] depends on itself.");
+            }
+            try {
+                return future.join();
+            } catch (CompletionException e) {
+                throwIfUnchecked(e.getCause());
+                throw e;
+            }
+        }
+    }
+
     @Override
     public String toString() {
         return reflectionToString(this, SHORT_PREFIX_STYLE);
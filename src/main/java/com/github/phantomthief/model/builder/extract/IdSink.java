@@ -0,0 +1,50 @@
+package com.github.phantomthief.model.builder.extract;
+
+/**
+ * Receives ids extracted from a model, registered by
+ * {@link com.github.phantomthief.model.builder.impl.SimpleModelBuilder#extractIdsTo}.
+ *
+ * The sink is bound to one id namespace of the current build round, ids are collected into the round directly
+ * (ids already built are dropped), so an extractor doesn't need to allocate any collection. A sink is only
+ * valid during the call of the extractor, it should never be kept.
+ *
+ * <pre>{@code
+ * builder.extractIdsTo(Post.class, (post, sink) -> {
+ *     sink.accept(post.getUserId());
+ *     sink.acceptAll(post.getAtUserIds());
+ * }, User.class);
+ * }</pre>
+ *
+ * @author w.vela
+ */
+public interface IdSink {
+
+    /**
+     * null is ignored. ids of a long namespace should be {@link Number}s.
+     */
+    void accept(Object id);
+
+    /**
+     * a primitive id, it's collected without boxing in a long namespace, and boxed as {@link Long} otherwise.
+     */
+    void acceptLong(long id);
+
+    /**
+     * a primitive int id, it's collected without boxing in a long namespace, and boxed as {@link Integer}
+     * otherwise, the same as {@link #accept}.
+     */
+    default void acceptInt(int id) {
+        accept(id);
+    }
+
+    /**
+     * null is ignored.
+     */
+    default void acceptAll(Iterable<?> ids) {
+        if (ids != null) {
+            for (Object id : ids) {
+                accept(id);
+            }
+        }
+    }
+}
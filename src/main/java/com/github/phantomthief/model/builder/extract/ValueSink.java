@@ -0,0 +1,26 @@
+package com.github.phantomthief.model.builder.extract;
+
+/**
+ * Receives values extracted from a model with their ids, registered by
+ * {@link com.github.phantomthief.model.builder.impl.SimpleModelBuilder#extractValuesTo}.
+ *
+ * Like {@link IdSink}, the sink is bound to one value namespace of the current build round, and it's only valid
+ * during the call of the extractor.
+ *
+ * <pre>{@code
+ * builder.extractValuesTo(Post.class, (post, sink) -> {
+ *     for (Comment comment : post.comments()) {
+ *         sink.accept(comment.getId(), comment);
+ *     }
+ * }, Comment.class);
+ * }</pre>
+ *
+ * @author w.vela
+ */
+public interface ValueSink {
+
+    /**
+     * the pair is ignored if the id or the value is null. values already built are kept.
+     */
+    void accept(Object id, Object value);
+}
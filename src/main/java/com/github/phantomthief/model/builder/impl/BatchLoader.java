@@ -0,0 +1,140 @@
+package com.github.phantomthief.model.builder.impl;
+
+import static java.util.concurrent.CompletableFuture.allOf;
+import static java.util.concurrent.Executors.newCachedThreadPool;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Executor;
+import java.util.function.Function;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * Collects ids requested by concurrent builds of a value builder, and loads them in one call after a short
+ * window or once the batch is full. An id in flight is never requested again, its waiters share the result.
+ *
+ * @author w.vela
+ */
+final class BatchLoader {
+
+    // runs batched blocking value builders and prefetched lazy namespaces if the model builder has no executor.
+    static final Executor DEFAULT_EXECUTOR = newCachedThreadPool(new ThreadFactoryBuilder()
+            .setNameFormat("model-builder-worker-%d")
+            .setDaemon(true)
+            .build());
+
+    private final long windowNanos;
+    private final int maxBatchSize;
+    private final Function<Collection<Object>, CompletionStage<Map<Object, Object>>> loader;
+
+    // ids waiting for next flush
+    private Map<Object, CompletableFuture<Object>> pending = new LinkedHashMap<>();
+    private final Map<Object, CompletableFuture<Object>> inFlight = new HashMap<>();
+
+    BatchLoader(long windowNanos, int maxBatchSize,
+            Function<Collection<Object>, CompletionStage<Map<Object, Object>>> loader) {
+        this.windowNanos = windowNanos;
+        this.maxBatchSize = maxBatchSize;
+        this.loader = loader;
+    }
+
+    CompletableFuture<Map<Object, Object>> load(Collection<Object> ids) {
+        Map<Object, CompletableFuture<Object>> futures = new HashMap<>(ids.size());
+        Map<Object, CompletableFuture<Object>> toFlush = null;
+        synchronized (this) {
+            for (Object id : ids) {
+                CompletableFuture<Object> future = inFlight.get(id);
+                if (future == null) {
+                    future = pending.get(id);
+                }
+                if (future == null) {
+                    future = new CompletableFuture<>();
+                    if (pending.isEmpty() && windowNanos > 0) {
+                        Timers.SCHEDULER.schedule(this::flushByWindow, windowNanos, NANOSECONDS);
+                    }
+                    pending.put(id, future);
+                    if (pending.size() >= maxBatchSize) {
+                        toFlush = takePending(toFlush);
+                    }
+                }
+                futures.put(id, future);
+            }
+            // without window, only ids in flight are shared
+            if (windowNanos <= 0 && !pending.isEmpty()) {
+                toFlush = takePending(toFlush);
+            }
+        }
+        if (toFlush != null) {
+            flush(toFlush);
+        }
+        return allOf(futures.values().toArray(new CompletableFuture<?>[0])).thenApply(it -> {
+            Map<Object, Object> result = new HashMap<>(futures.size());
+            futures.forEach((id, future) -> {
+                Object value = future.join();
+                if (value != null) {
+                    result.put(id, value);
+                }
+            });
+            return result;
+        });
+    }
+
+    // caller should hold the lock
+    private Map<Object, CompletableFuture<Object>> takePending(Map<Object, CompletableFuture<Object>> taken) {
+        Map<Object, CompletableFuture<Object>> result = pending;
+        pending = new LinkedHashMap<>();
+        inFlight.putAll(result);
+        if (taken != null) {
+            taken.putAll(result);
+            return taken;
+        }
+        return result;
+    }
+
+    private void flushByWindow() {
+        Map<Object, CompletableFuture<Object>> toFlush;
+        synchronized (this) {
+            if (pending.isEmpty()) { // already flushed by batch size
+                return;
+            }
+            toFlush = takePending(null);
+        }
+        flush(toFlush);
+    }
+
+    private void flush(Map<Object, CompletableFuture<Object>> batch) {
+        List<Object> ids = new ArrayList<>(batch.keySet());
+        for (int from = 0; from < ids.size(); from += maxBatchSize) {
+            List<Object> chunk = ids.subList(from, Math.min(ids.size(), from + maxBatchSize));
+            CompletionStage<Map<Object, Object>> stage;
+            try {
+                stage = loader.apply(chunk);
+            } catch (Throwable e) {
+                CompletableFuture<Map<Object, Object>> failed = new CompletableFuture<>();
+                failed.completeExceptionally(e);
+                stage = failed;
+            }
+            stage.whenComplete((values, e) -> {
+                synchronized (this) {
+                    chunk.forEach(inFlight::remove);
+                }
+                for (Object id : chunk) {
+                    CompletableFuture<Object> future = batch.get(id);
+                    if (e != null) {
+                        future.completeExceptionally(e);
+                    } else {
+                        future.complete(values == null ? null : values.get(id));
+                    }
+                }
+            });
+        }
+    }
+}
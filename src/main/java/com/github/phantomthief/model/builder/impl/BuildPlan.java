@@ -0,0 +1,1302 @@
+package com.github.phantomthief.model.builder.impl;
+
+import static com.google.common.base.Preconditions.checkState;
+import static com.github.phantomthief.model.builder.impl.Timers.timeout;
+import static com.github.phantomthief.model.builder.impl.Timers.withTimeout;
+import static com.google.common.base.Throwables.throwIfUnchecked;
+import static java.util.concurrent.CompletableFuture.allOf;
+import static java.util.concurrent.CompletableFuture.completedFuture;
+import static java.util.concurrent.CompletableFuture.supplyAsync;
+import static org.apache.commons.lang3.builder.ToStringBuilder.reflectionToString;
+import static org.apache.commons.lang3.builder.ToStringStyle.SHORT_PREFIX_STYLE;
+import static org.slf4j.LoggerFactory.getLogger;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeoutException;
+import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+import java.util.function.ToLongFunction;
+
+import org.slf4j.Logger;
+
+import com.github.phantomthief.model.builder.cache.ValueCache;
+import com.github.phantomthief.model.builder.context.BuildContext;
+import com.github.phantomthief.model.builder.context.impl.SimpleBuildContext;
+import com.github.phantomthief.model.builder.extract.IdSink;
+import com.github.phantomthief.model.builder.extract.ValueSink;
+import com.github.phantomthief.model.builder.impl.SimpleModelBuilder.Batching;
+import com.github.phantomthief.model.builder.impl.SimpleModelBuilder.Chunking;
+import com.github.phantomthief.model.builder.impl.SimpleModelBuilder.KeyLazy;
+import com.github.phantomthief.model.builder.impl.SimpleModelBuilder.KeyPair;
+import com.github.phantomthief.model.builder.impl.SimpleModelBuilder.ParallelExtracting;
+import com.github.phantomthief.model.builder.impl.SimpleModelBuilder.ValueBuilder;
+import com.github.phantomthief.model.builder.impl.SimpleModelBuilder.ValueOptions;
+import com.github.phantomthief.model.builder.metrics.BuildMetricsListener;
+import com.github.phantomthief.model.builder.util.LongHashMap;
+import com.github.phantomthief.model.builder.util.LongHashSet;
+import com.github.phantomthief.model.builder.util.MergeUtils;
+import com.github.phantomthief.model.builder.util.TypeDispatcher;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSetMultimap;
+import com.google.common.collect.Iterables;
+import com.google.common.collect.SetMultimap;
+import com.google.common.collect.Sets;
+import com.google.common.primitives.Longs;
+import com.google.common.util.concurrent.UncheckedTimeoutException;
+
+/**
+ * An immutable snapshot of the registrations of a {@link SimpleModelBuilder}, and the build process on it.
+ *
+ * All namespaces of extractors and value builders are indexed by int at construction, so a build only works
+ * on arrays: extractors are resolved once per model class into arrays, and value builders are grouped
+ * by the index of their id namespace.
+ *
+ * @author w.vela
+ */
+@SuppressWarnings("unchecked")
+final class BuildPlan<B extends BuildContext> {
+
+    private static final Logger logger = getLogger(BuildPlan.class);
+
+    // namespace index=>namespace
+    private final Object[] namespaces;
+    // namespace index=>if ids of the namespace are primitive long
+    private final boolean[] longNamespaces;
+    private final ImmutableSetMultimap<Class<?>, IdExtractor> idExtractors;
+    private final ImmutableSetMultimap<Class<?>, ValueExtractor> valueExtractors;
+    // idNamespace index=>value builders, it's the dependency graph of namespaces.
+    private final CompiledValueBuilder<B>[][] valueBuilders;
+    private final ImmutableMap<Object, Function<BuildContext, Map<Object, Object>>> lazyBuilders;
+    private final Object[] prefetchNamespaces;
+    private final Executor executor;
+    // nullable
+    private final ParallelExtracting parallelExtracting;
+    // nullable
+    private final BuildMetricsListener metrics;
+
+    private final TypeDispatcher<Extractors> extractorsByType;
+    // shared by all builds on this plan
+    private final RoundPool roundPool;
+
+    private static final ValueOptions NO_OPTIONS = new ValueOptions();
+
+    @SuppressWarnings("unchecked")
+    BuildPlan(SetMultimap<Class<?>, KeyPair<BiConsumer<Object, IdSink>>> idExtractors,
+            SetMultimap<Class<?>, KeyPair<ToLongFunction<Object>>> longIdExtractors,
+            SetMultimap<Class<?>, KeyPair<BiConsumer<Object, ValueSink>>> valueExtractors,
+            SetMultimap<Object, ValueBuilder<B>> valueBuilders, Set<Object> longNamespaces,
+            Map<Object, ValueOptions> valueOptions,
+            Map<Object, Function<BuildContext, Map<Object, Object>>> lazyBuilders, Set<Object> prefetchNamespaces,
+            Executor executor, ParallelExtracting parallelExtracting,
+            List<BuildMetricsListener> metricsListeners) {
+        Map<Object, Integer> namespaceIndex = new HashMap<>();
+        idExtractors.values().forEach(it -> indexOf(namespaceIndex, it.getKey()));
+        longIdExtractors.values().forEach(it -> indexOf(namespaceIndex, it.getKey()));
+        valueExtractors.values().forEach(it -> indexOf(namespaceIndex, it.getKey()));
+        valueBuilders.forEach((idNamespace, it) -> {
+            indexOf(namespaceIndex, idNamespace);
+            indexOf(namespaceIndex, it.valueNamespace);
+        });
+
+        this.namespaces = new Object[namespaceIndex.size()];
+        this.longNamespaces = new boolean[namespaces.length];
+        namespaceIndex.forEach((namespace, index) -> {
+            namespaces[index] = namespace;
+            this.longNamespaces[index] = longNamespaces.contains(namespace);
+        });
+
+        ImmutableSetMultimap.Builder<Class<?>, IdExtractor> idExtractorsBuilder = ImmutableSetMultimap.builder();
+        idExtractors.forEach((type, it) -> idExtractorsBuilder.put(type,
+                new IdExtractor(namespaceIndex.get(it.getKey()), it.getValue(), null)));
+        longIdExtractors.forEach((type, it) -> idExtractorsBuilder.put(type,
+                new IdExtractor(namespaceIndex.get(it.getKey()), null, it.getValue())));
+        this.idExtractors = idExtractorsBuilder.build();
+        ImmutableSetMultimap.Builder<Class<?>, ValueExtractor> valueExtractorsBuilder = ImmutableSetMultimap
+                .builder();
+        valueExtractors.forEach((type, it) -> valueExtractorsBuilder.put(type,
+                new ValueExtractor(namespaceIndex.get(it.getKey()), it.getValue())));
+        this.valueExtractors = valueExtractorsBuilder.build();
+
+        this.valueBuilders = (CompiledValueBuilder<B>[][]) new CompiledValueBuilder<?>[namespaces.length][];
+        for (int i = 0; i < namespaces.length; i++) {
+            this.valueBuilders[i] = valueBuilders.get(namespaces[i]).stream()
+                    .map(it -> new CompiledValueBuilder<>(namespaceIndex.get(it.valueNamespace), it,
+                            valueOptions.getOrDefault(it.valueNamespace, NO_OPTIONS), executor))
+                    .toArray(CompiledValueBuilder[]::new);
+        }
+        this.executor = executor;
+        this.parallelExtracting = parallelExtracting;
+        this.metrics = CompositeMetricsListener.of(metricsListeners);
+        if (metrics == null) {
+            this.lazyBuilders = ImmutableMap.copyOf(lazyBuilders);
+        } else {
+            ImmutableMap.Builder<Object, Function<BuildContext, Map<Object, Object>>> lazyBuildersBuilder =
+                    ImmutableMap.builder();
+            lazyBuilders.forEach((namespace, lazyBuilder) -> lazyBuildersBuilder.put(namespace,
+                    measureLazy(namespace, lazyBuilder)));
+            this.lazyBuilders = lazyBuildersBuilder.build();
+        }
+        prefetchNamespaces.forEach(namespace -> checkState(lazyBuilders.containsKey(namespace),
+                "namespace [%s] is prefetched, but it's not a lazy namespace.", namespace));
+        this.prefetchNamespaces = prefetchNamespaces.toArray();
+
+        ImmutableSetMultimap<Class<?>, IdExtractor> allIdExtractors = this.idExtractors;
+        ImmutableSetMultimap<Class<?>, ValueExtractor> allValueExtractors = this.valueExtractors;
+        this.extractorsByType = new TypeDispatcher<>(
+                type -> new Extractors(type, allIdExtractors, allValueExtractors));
+        Sets.union(idExtractors.keySet(), valueExtractors.keySet()).forEach(extractorsByType::get);
+        this.roundPool = new RoundPool();
+    }
+
+    private Function<BuildContext, Map<Object, Object>> measureLazy(Object namespace,
+            Function<BuildContext, Map<Object, Object>> lazyBuilder) {
+        BuildMetricsListener metrics = this.metrics;
+        if (lazyBuilder instanceof KeyLazy) {
+            // measure each batch instead of the creation of the map
+            BiFunction<BuildContext, Collection<Object>, Map<Object, ?>> builder = ((KeyLazy) lazyBuilder).builder;
+            return ((KeyLazy) lazyBuilder).withBuilder((buildContext, ids) -> {
+                long startNanos = System.nanoTime();
+                Map<Object, ?> result = builder.apply(buildContext, ids);
+                metrics.onLazyBuild(buildContext, namespace, result == null ? 0 : result.size(),
+                        System.nanoTime() - startNanos);
+                return result;
+            });
+        }
+        return buildContext -> {
+            long startNanos = System.nanoTime();
+            Map<Object, Object> result = lazyBuilder.apply(buildContext);
+            metrics.onLazyBuild(buildContext, namespace, result == null ? 0 : result.size(),
+                    System.nanoTime() - startNanos);
+            return result;
+        };
+    }
+
+    private static void indexOf(Map<Object, Integer> namespaceIndex, Object namespace) {
+        namespaceIndex.putIfAbsent(namespace, namespaceIndex.size());
+    }
+
+    void buildMulti(Iterable<?> sources, B buildContext) {
+        if (sources == null) {
+            return;
+        }
+        setupLazyNodeData(buildContext);
+
+        if (executor != null) {
+            join(new DataflowBuild(buildContext).start(sources));
+            return;
+        }
+
+        long startNanos = onBuildStart(buildContext);
+        int rounds = 0;
+        try {
+            Set<Object> pendingForBuilding = Sets.newHashSet(sources);
+
+            while (!pendingForBuilding.isEmpty()) {
+                long roundStartNanos = onRoundStart(buildContext, ++rounds, pendingForBuilding.size());
+                Round round = extractAll(pendingForBuilding, buildContext);
+                onExtractEnd(buildContext, rounds, roundStartNanos);
+
+                join(valueBuild(round, buildContext));
+                mergeToBuildContext(round, buildContext);
+
+                pendingForBuilding = round.nextPendingForBuilding();
+                roundPool.release(round);
+                onRoundEnd(buildContext, rounds, roundStartNanos);
+            }
+        } catch (Throwable e) {
+            onBuildEnd(buildContext, rounds, startNanos, e);
+            throw e;
+        }
+        onBuildEnd(buildContext, rounds, startNanos, null);
+        prefetchLazy(buildContext);
+    }
+
+    CompletableFuture<B> buildMultiAsync(Iterable<?> sources, B buildContext) {
+        if (sources == null) {
+            return completedFuture(buildContext);
+        }
+        setupLazyNodeData(buildContext);
+        return new DataflowBuild(buildContext).start(sources);
+    }
+
+    /**
+     * called once a build succeeds.
+     */
+    private void prefetchLazy(B buildContext) {
+        if (prefetchNamespaces.length > 0 && buildContext instanceof SimpleBuildContext) {
+            Executor prefetchExecutor = executor != null ? executor : BatchLoader.DEFAULT_EXECUTOR;
+            for (Object namespace : prefetchNamespaces) {
+                ((SimpleBuildContext) buildContext).prefetchLazy(namespace, prefetchExecutor);
+            }
+        }
+    }
+
+    private void setupLazyNodeData(B buildContext) {
+        if (buildContext instanceof SimpleBuildContext) {
+            SimpleBuildContext simpleBuildContext = (SimpleBuildContext) buildContext;
+            lazyBuilders.forEach(simpleBuildContext::setupLazyNodeData);
+            for (int i = 0; i < namespaces.length; i++) {
+                if (longNamespaces[i]) {
+                    simpleBuildContext.setupLongNamespace(namespaces[i]);
+                }
+            }
+        }
+    }
+
+    // the following methods report to metrics listener, they don't read the clock if there is no listener.
+
+    private long onBuildStart(B buildContext) {
+        if (metrics == null) {
+            return 0;
+        }
+        metrics.onBuildStart(buildContext);
+        return System.nanoTime();
+    }
+
+    private void onBuildEnd(B buildContext, int rounds, long startNanos, Throwable e) {
+        if (metrics != null) {
+            metrics.onBuildEnd(buildContext, rounds, System.nanoTime() - startNanos, e);
+        }
+    }
+
+    private long onRoundStart(B buildContext, int round, int objectCount) {
+        if (metrics == null) {
+            return 0;
+        }
+        metrics.onRoundStart(buildContext, round, objectCount);
+        return System.nanoTime();
+    }
+
+    private void onExtractEnd(B buildContext, int round, long roundStartNanos) {
+        if (metrics != null) {
+            metrics.onExtractEnd(buildContext, round, System.nanoTime() - roundStartNanos);
+        }
+    }
+
+    private void onRoundEnd(B buildContext, int round, long startNanos) {
+        if (metrics != null) {
+            metrics.onRoundEnd(buildContext, round, System.nanoTime() - startNanos);
+        }
+    }
+
+    private void onIdsFiltered(B buildContext, Round round, int idNamespace, int valueNamespace, BuildIds ids) {
+        if (metrics != null) {
+            metrics.onIdsFiltered(buildContext, namespaces[idNamespace], namespaces[valueNamespace],
+                    round.idCount(idNamespace), ids.size());
+        }
+    }
+
+    private long onValueBuildStart(CompiledValueBuilder<B> valueBuilder, B buildContext, BuildIds ids) {
+        if (metrics == null) {
+            return 0;
+        }
+        metrics.onValueBuildStart(buildContext, namespaces[valueBuilder.valueNamespace], ids.size());
+        return System.nanoTime();
+    }
+
+    private void onValueBuildEnd(CompiledValueBuilder<B> valueBuilder, B buildContext, BuildIds ids,
+            long startNanos, Map<Object, Object> values, Throwable e) {
+        if (metrics != null) {
+            metrics.onValueBuildEnd(buildContext, namespaces[valueBuilder.valueNamespace], ids.size(),
+                    values == null ? 0 : values.size(), System.nanoTime() - startNanos, e);
+        }
+    }
+
+    private void mergeToBuildContext(Round round, B buildContext) {
+        for (int i = 0; i < namespaces.length; i++) {
+            Map<Object, Object> values = round.values[i];
+            if (values != null && !values.isEmpty()) {
+                buildContext.getData(namespaces[i]).putAll(values);
+            }
+        }
+    }
+
+    /**
+     * synchronous value builders run in caller thread, asynchronous ones are started directly.
+     * the returned future is completed after all results are merged into the round.
+     */
+    private CompletableFuture<Void> valueBuild(Round round, B buildContext) {
+        // async builders of the same value namespace don't see each other's results,
+        // they are merged in registration order.
+        List<KeyPair<CompletableFuture<Map<Object, Object>>>> futures = new ArrayList<>();
+        // raw futures of started builders, to be cancelled once the round fails
+        List<CompletableFuture<?>> started = new ArrayList<>();
+        try {
+            for (int i = 0; i < namespaces.length; i++) {
+                if (!round.hasIds(i)) {
+                    continue;
+                }
+                for (CompiledValueBuilder<B> valueBuilder : valueBuilders[i]) {
+                    int valueNamespace = valueBuilder.valueNamespace;
+                    BuildIds needToBuildIds = needToBuild(round, i, buildContext, valueNamespace, null);
+                    onIdsFiltered(buildContext, round, i, valueNamespace, needToBuildIds);
+                    if (valueBuilder.isAsync()) {
+                        if (!needToBuildIds.isEmpty()) {
+                            long startNanos = onValueBuildStart(valueBuilder, buildContext, needToBuildIds);
+                            CompletableFuture<Map<Object, Object>> future = valueBuilder.buildAsync(buildContext,
+                                    needToBuildIds);
+                            started.add(future);
+                            futures.add(new KeyPair<>(valueNamespace,
+                                    guard(valueBuilder, buildContext, needToBuildIds, startNanos, future)));
+                        }
+                    } else {
+                        Map<Object, Object> values = buildSync(valueBuilder, buildContext, needToBuildIds);
+                        if (values != null) {
+                            round.values(valueNamespace).putAll(values);
+                        }
+                    }
+                }
+            }
+        } catch (Throwable e) {
+            started.forEach(future -> future.cancel(true));
+            throw e;
+        }
+        if (futures.isEmpty()) {
+            return completedFuture(null);
+        }
+        CompletableFuture<Void> all = allOf(futures.stream().map(KeyPair::getValue).toArray(CompletableFuture[]::new));
+        // fail fast by the first failure of required namespaces
+        futures.forEach(future -> future.getValue().whenComplete((values, e) -> {
+            if (e != null && all.completeExceptionally(e)) {
+                started.forEach(it -> it.cancel(true));
+            }
+        }));
+        return all.thenRun(() -> {
+            for (KeyPair<CompletableFuture<Map<Object, Object>>> future : futures) {
+                Map<Object, Object> values = future.getValue().join();
+                if (values != null) {
+                    round.values((Integer) future.getKey()).putAll(values);
+                }
+            }
+        });
+    }
+
+    /**
+     * @return the timeout of a call of given builder, shortened by the deadline of build context.
+     */
+    private long timeoutOf(CompiledValueBuilder<B> valueBuilder, B buildContext) {
+        long timeoutNanos = valueBuilder.timeoutNanos;
+        if (buildContext instanceof SimpleBuildContext) {
+            timeoutNanos = Math.min(timeoutNanos, ((SimpleBuildContext) buildContext).remainingNanos());
+        }
+        return timeoutNanos;
+    }
+
+    /**
+     * call a synchronous builder in caller thread, it's skipped if the deadline is passed.
+     */
+    private Map<Object, Object> buildSync(CompiledValueBuilder<B> valueBuilder, B buildContext, BuildIds ids) {
+        if (timeoutOf(valueBuilder, buildContext) <= 0) {
+            return onBuildFailure(valueBuilder, buildContext, timeout(namespaces[valueBuilder.valueNamespace]));
+        }
+        long startNanos = onValueBuildStart(valueBuilder, buildContext, ids);
+        Map<Object, Object> values;
+        try {
+            values = valueBuilder.build(buildContext, ids);
+        } catch (RuntimeException e) {
+            onValueBuildEnd(valueBuilder, buildContext, ids, startNanos, null, e);
+            return onBuildFailure(valueBuilder, buildContext, e);
+        }
+        onValueBuildEnd(valueBuilder, buildContext, ids, startNanos, values, null);
+        return values;
+    }
+
+    /**
+     * time out the call of an asynchronous builder, and recover the failure if its namespace is optional.
+     */
+    private CompletableFuture<Map<Object, Object>> guard(CompiledValueBuilder<B> valueBuilder, B buildContext,
+            BuildIds ids, long startNanos, CompletableFuture<Map<Object, Object>> future) {
+        CompletableFuture<Map<Object, Object>> timed = withTimeout(future, timeoutOf(valueBuilder, buildContext),
+                namespaces[valueBuilder.valueNamespace]);
+        if (metrics != null) {
+            timed = timed.whenComplete((values, e) -> onValueBuildEnd(valueBuilder, buildContext, ids, startNanos,
+                    values, e == null ? null : unwrap(e)));
+        }
+        return timed.handle((values, e) -> e == null ? values : onBuildFailure(valueBuilder, buildContext, unwrap(e)));
+    }
+
+    /**
+     * @return null if the namespace is optional, which is marked degraded. otherwise the failure is thrown.
+     */
+    private Map<Object, Object> onBuildFailure(CompiledValueBuilder<B> valueBuilder, B buildContext, Throwable e) {
+        Object namespace = namespaces[valueBuilder.valueNamespace];
+        if (valueBuilder.optional) {
+            if (e instanceof TimeoutException) {
+                logger.warn("optional namespace:{} timed out, it's degraded.", namespace);
+            } else {
+                logger.warn("fail to build optional namespace:{}, it's degraded.", namespace, e);
+            }
+            if (buildContext instanceof SimpleBuildContext) {
+                ((SimpleBuildContext) buildContext).markDegraded(namespace);
+            }
+            return null;
+        }
+        if (e instanceof TimeoutException) {
+            throw new UncheckedTimeoutException(e);
+        }
+        throwIfUnchecked(e);
+        throw new CompletionException(e);
+    }
+
+    private static Throwable unwrap(Throwable e) {
+        return e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+    }
+
+    private static <T> T join(CompletableFuture<T> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            throwIfUnchecked(e.getCause());
+            throw e;
+        }
+    }
+
+    /**
+     * @param building ids in building of the value namespace, nullable
+     */
+    private BuildIds needToBuild(Round round, int idNamespace, B buildContext, int valueNamespace,
+            BuildingIds building) {
+        Map<Object, Object> buildContextData = buildContext.getData(namespaces[valueNamespace]);
+        Map<Object, Object> roundValues = round.values[valueNamespace];
+        boolean noRoundValues = roundValues == null || roundValues.isEmpty();
+
+        if (longNamespaces[idNamespace]) {
+            long[] ids = round.longIds[idNamespace].toArray();
+            LongHashSet buildingIds = building == null ? null : building.longIds;
+            int count = 0;
+            for (long id : ids) {
+                if (!containsKey(buildContextData, id) && (noRoundValues || !containsKey(roundValues, id))
+                        && (buildingIds == null || !buildingIds.contains(id))) {
+                    ids[count++] = id;
+                }
+            }
+            return new BuildIds(count == ids.length ? ids : Arrays.copyOf(ids, count));
+        }
+
+        // the ids of round are reused by next round, they are always copied
+        Set<Object> original = round.ids[idNamespace];
+        Set<Object> buildingIds = building == null ? null : building.ids;
+        if (buildContextData.isEmpty() && noRoundValues && (buildingIds == null || buildingIds.isEmpty())) {
+            return new BuildIds(new ArrayList<>(original));
+        }
+        Set<Object> buildContextExistIds = buildContextData.keySet();
+        List<Object> filteredIds = new ArrayList<>(original.size());
+        for (Object value : original) {
+            if (!buildContextExistIds.contains(value) && (noRoundValues || !roundValues.containsKey(value))
+                    && (buildingIds == null || !buildingIds.contains(value))) {
+                filteredIds.add(value);
+            }
+        }
+        return new BuildIds(filteredIds);
+    }
+
+    @SuppressWarnings("rawtypes")
+    private static boolean containsKey(Map<Object, Object> map, long id) {
+        if (map instanceof LongHashMap) {
+            return ((LongHashMap<Object>) (Map) map).containsKey(id);
+        } else {
+            return map.containsKey(id);
+        }
+    }
+
+    /**
+     * @return the round with ids and values of all objects, it should be released once it's done.
+     */
+    private Round extractAll(Collection<Object> objects, B buildContext) {
+        if (parallelExtracting == null || objects.size() < parallelExtracting.threshold
+                || !(buildContext instanceof SimpleBuildContext)) {
+            Round round = roundPool.acquire();
+            for (Object object : objects) {
+                extract(object, buildContext, round);
+            }
+            return round;
+        }
+        ForkJoinPool pool = parallelExtracting.pool;
+        Object[] array = objects.toArray();
+        // a few tasks for each worker, so the workers are balanced by stealing
+        int leafSize = Math.max(1, array.length / (pool.getParallelism() * 4));
+        return pool.invoke(new ExtractTask(array, 0, array.length, leafSize, buildContext));
+    }
+
+    private void extract(Object obj, B buildContext, Round round) {
+        if (obj == null) {
+            return;
+        }
+        Extractors extractors = extractorsByType.get(obj.getClass());
+        for (ValueExtractor valueExtractor : extractors.valueExtractors) {
+            int namespace = valueExtractor.namespace;
+            // no value builder depends on the ids of this namespace
+            boolean collectIds = valueBuilders[namespace].length > 0;
+            round.bind(namespace, contextData(round, namespace, buildContext), collectIds);
+            valueExtractor.extractor.accept(obj, round);
+        }
+
+        for (IdExtractor idExtractor : extractors.idExtractors) {
+            int namespace = idExtractor.namespace;
+            if (valueBuilders[namespace].length == 0) {
+                continue;
+            }
+            round.bind(namespace, contextData(round, namespace, buildContext), true);
+            if (idExtractor.longExtractor != null) {
+                round.acceptLong(idExtractor.longExtractor.applyAsLong(obj));
+            } else {
+                idExtractor.extractor.accept(obj, round);
+            }
+        }
+    }
+
+    private Map<Object, Object> contextData(Round round, int namespace, B buildContext) {
+        Map<Object, Object> result = round.contextData[namespace];
+        if (result == null) {
+            result = round.contextData[namespace] = buildContext.getData(namespaces[namespace]);
+        }
+        return result;
+    }
+
+    /**
+     * The released rounds of all builds on this plan, so the collections of a round are reused by later rounds
+     * and later builds instead of being allocated for each round.
+     *
+     * A round is owned by the build which acquired it until it's released, and by the pool after that: the build
+     * references nothing of it after releasing (ids passed to value builders and values merged to build context
+     * are copied). The pool keeps a bounded number of rounds, and a round drops its oversized collections on
+     * clearing (see {@link Round#MAX_REUSED_SIZE}), so the memory pinned by a plan is bounded too.
+     */
+    private final class RoundPool {
+
+        // one for the sequential extraction, and one for each worker of the parallel extraction,
+        // concurrent builds beyond that allocate their own rounds.
+        private final int maxSize = parallelExtracting == null ? 1 : parallelExtracting.pool.getParallelism() + 1;
+        private final List<Round> rounds = new ArrayList<>();
+
+        private synchronized Round acquire() {
+            return rounds.isEmpty() ? new Round(longNamespaces) : rounds.remove(rounds.size() - 1);
+        }
+
+        /**
+         * called after the round is done, nothing of the round should be referenced after this.
+         * a failed round is just dropped.
+         */
+        private synchronized void release(Round round) {
+            if (rounds.size() < maxSize) {
+                round.clear();
+                rounds.add(round);
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return reflectionToString(this, SHORT_PREFIX_STYLE);
+    }
+
+    /**
+     * Extracts a range of objects into a round of its own, the round of right half is merged into the left one,
+     * so the values of later objects win as they do in a sequential extraction.
+     */
+    private final class ExtractTask extends RecursiveTask<Round> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final Object[] objects;
+        private final int from;
+        private final int to;
+        private final int leafSize;
+        private final B buildContext;
+
+        private ExtractTask(Object[] objects, int from, int to, int leafSize, B buildContext) {
+            this.objects = objects;
+            this.from = from;
+            this.to = to;
+            this.leafSize = leafSize;
+            this.buildContext = buildContext;
+        }
+
+        @Override
+        protected Round compute() {
+            if (to - from <= leafSize) {
+                Round round = roundPool.acquire();
+                for (int i = from; i < to; i++) {
+                    extract(objects[i], buildContext, round);
+                }
+                return round;
+            }
+            int middle = (from + to) >>> 1;
+            ExtractTask right = new ExtractTask(objects, middle, to, leafSize, buildContext);
+            right.fork();
+            Round left = new ExtractTask(objects, from, middle, leafSize, buildContext).compute();
+            Round rightRound = right.join();
+            left.mergeFrom(rightRound);
+            roundPool.release(rightRound);
+            return left;
+        }
+    }
+
+    /**
+     * all extractors applied to a model class, including the ones registered on its super types.
+     * it's cached on the model class, so it should never reference the plan.
+     */
+    private static final class Extractors {
+
+        private final IdExtractor[] idExtractors;
+        private final ValueExtractor[] valueExtractors;
+
+        private Extractors(Class<?> type, SetMultimap<Class<?>, IdExtractor> idExtractors,
+                SetMultimap<Class<?>, ValueExtractor> valueExtractors) {
+            this.idExtractors = idExtractors.entries().stream()
+                    .filter(it -> it.getKey().isAssignableFrom(type))
+                    .map(Entry::getValue)
+                    .toArray(IdExtractor[]::new);
+            this.valueExtractors = valueExtractors.entries().stream()
+                    .filter(it -> it.getKey().isAssignableFrom(type))
+                    .map(Entry::getValue)
+                    .toArray(ValueExtractor[]::new);
+        }
+    }
+
+    private static final class IdExtractor {
+
+        private final int namespace;
+        private final BiConsumer<Object, IdSink> extractor;
+        private final ToLongFunction<Object> longExtractor;
+
+        private IdExtractor(int namespace, BiConsumer<Object, IdSink> extractor,
+                ToLongFunction<Object> longExtractor) {
+            this.namespace = namespace;
+            this.extractor = extractor;
+            this.longExtractor = longExtractor;
+        }
+    }
+
+    private static final class ValueExtractor {
+
+        private final int namespace;
+        private final BiConsumer<Object, ValueSink> extractor;
+
+        private ValueExtractor(int namespace, BiConsumer<Object, ValueSink> extractor) {
+            this.namespace = namespace;
+            this.extractor = extractor;
+        }
+    }
+
+    private static final class CompiledValueBuilder<B extends BuildContext> {
+
+        private final int valueNamespace;
+        private final ValueBuilder<B> source;
+        // nullable
+        private final ValueCache cache;
+        // nullable
+        private final BatchLoader batchLoader;
+        // nullable
+        private final Chunking chunking;
+        // nullable, executor of chunks
+        private final Executor chunkExecutor;
+        // Long.MAX_VALUE if there is no timeout
+        private final long timeoutNanos;
+        private final boolean optional;
+
+        private CompiledValueBuilder(int valueNamespace, ValueBuilder<B> source, ValueOptions options,
+                Executor executor) {
+            ValueCache cache = options.cache;
+            Batching batching = options.batching;
+            Chunking chunking = options.chunking;
+            checkState(cache == null || source.contextFree,
+                    "value namespace [%s] is cached, but it's built by a builder depends on build context.",
+                    source.valueNamespace);
+            checkState(batching == null || source.contextFree,
+                    "value namespace [%s] is batched, but it's built by a builder depends on build context.",
+                    source.valueNamespace);
+            this.valueNamespace = valueNamespace;
+            this.source = source;
+            this.cache = cache;
+            this.chunking = chunking;
+            this.timeoutNanos = options.timeoutNanos >= 0 ? options.timeoutNanos : Long.MAX_VALUE;
+            this.optional = options.optional;
+            if (chunking != null) {
+                this.chunkExecutor = chunking.executor != null ? chunking.executor : executor;
+            } else {
+                this.chunkExecutor = null;
+            }
+            if (batching == null) {
+                this.batchLoader = null;
+            } else {
+                Executor batchExecutor = executor != null ? executor : BatchLoader.DEFAULT_EXECUTOR;
+                // context free builders ignore the build context
+                this.batchLoader = new BatchLoader(batching.windowNanos, batching.maxBatchSize, ids -> {
+                    if (source.asyncBuilder != null) {
+                        return source.asyncBuilder.apply(null, ids);
+                    }
+                    BuildIds buildIds = toBuildIds(ids);
+                    return supplyAsync(() -> buildWithoutCache(null, buildIds), batchExecutor);
+                });
+            }
+        }
+
+        /**
+         * batched builders are always asynchronous, so concurrent builds can wait for the same batch.
+         * so are chunked builders with executor, chunks are dispatched without blocking any thread.
+         */
+        private boolean isAsync() {
+            return source.asyncBuilder != null || batchLoader != null || chunkExecutor != null;
+        }
+
+        private Map<Object, Object> build(B buildContext, BuildIds ids) {
+            if (cache != null) {
+                return cache.getAll(ids.boxed(),
+                        missed -> buildWithoutCache(buildContext, toBuildIds(missed)));
+            } else {
+                return buildWithoutCache(buildContext, ids);
+            }
+        }
+
+        @SuppressWarnings("rawtypes")
+        private BuildIds toBuildIds(Collection<Object> ids) {
+            if (source.longBuilder != null) {
+                return new BuildIds(Longs.toArray((Collection) ids));
+            } else {
+                return new BuildIds(ids);
+            }
+        }
+
+        private Map<Object, Object> buildWithoutCache(B buildContext, BuildIds ids) {
+            if (chunking == null || ids.size() <= chunking.maxBatchSize) {
+                return callBuilder(buildContext, ids);
+            }
+            // without executor, chunks are built one by one
+            Map<Object, Object> result = new HashMap<>();
+            for (BuildIds chunk : ids.split(chunking.maxBatchSize)) {
+                mergeChunk(result, callBuilder(buildContext, chunk));
+            }
+            return result;
+        }
+
+        private Map<Object, Object> callBuilder(B buildContext, BuildIds ids) {
+            if (source.longBuilder != null) {
+                return source.longBuilder.apply(buildContext, ids.longIds);
+            } else {
+                return source.builder.apply(buildContext, ids.boxed());
+            }
+        }
+
+        private CompletableFuture<Map<Object, Object>> buildAsync(B buildContext, BuildIds ids) {
+            if (cache != null) {
+                return cache.getAllAsync(ids.boxed(), missed -> buildAsyncWithoutCache(buildContext, missed));
+            } else {
+                return buildAsyncWithoutCache(buildContext, ids.boxed());
+            }
+        }
+
+        private CompletableFuture<Map<Object, Object>> buildAsyncWithoutCache(B buildContext,
+                Collection<Object> ids) {
+            if (batchLoader != null) {
+                return batchLoader.load(ids);
+            }
+            if (chunking == null || ids.size() <= chunking.maxBatchSize) {
+                return buildChunkAsync(buildContext, ids);
+            }
+            List<CompletableFuture<Map<Object, Object>>> futures = new ArrayList<>();
+            for (List<Object> chunk : Iterables.partition(ids, chunking.maxBatchSize)) {
+                futures.add(buildChunkAsync(buildContext, chunk));
+            }
+            return mergeChunks(futures);
+        }
+
+        private CompletableFuture<Map<Object, Object>> buildChunkAsync(B buildContext, Collection<Object> ids) {
+            if (source.asyncBuilder != null) {
+                return source.asyncBuilder.apply(buildContext, ids).toCompletableFuture();
+            } else {
+                BuildIds buildIds = toBuildIds(ids);
+                return supplyAsync(() -> callBuilder(buildContext, buildIds), chunkExecutor);
+            }
+        }
+
+        private static CompletableFuture<Map<Object, Object>> mergeChunks(
+                List<CompletableFuture<Map<Object, Object>>> futures) {
+            return allOf(futures.toArray(new CompletableFuture<?>[0])).thenApply(it -> {
+                Map<Object, Object> result = new HashMap<>();
+                futures.forEach(future -> mergeChunk(result, future.join()));
+                return result;
+            });
+        }
+
+        private static void mergeChunk(Map<Object, Object> result, Map<Object, Object> chunk) {
+            if (chunk != null) {
+                MergeUtils.merge(result, chunk);
+            }
+        }
+    }
+
+    /**
+     * ids of one value builder call, they are primitive if the id namespace is a long namespace.
+     */
+    private static final class BuildIds {
+
+        private final Collection<Object> ids;
+        private final long[] longIds;
+
+        private BuildIds(Collection<Object> ids) {
+            this.ids = ids;
+            this.longIds = null;
+        }
+
+        private BuildIds(long[] longIds) {
+            this.ids = null;
+            this.longIds = longIds;
+        }
+
+        private boolean isEmpty() {
+            return size() == 0;
+        }
+
+        private int size() {
+            return ids != null ? ids.size() : longIds.length;
+        }
+
+        private List<BuildIds> split(int maxSize) {
+            List<BuildIds> result = new ArrayList<>();
+            if (ids != null) {
+                for (List<Object> chunk : Iterables.partition(ids, maxSize)) {
+                    result.add(new BuildIds(chunk));
+                }
+            } else {
+                for (int from = 0; from < longIds.length; from += maxSize) {
+                    result.add(new BuildIds(Arrays.copyOfRange(longIds, from,
+                            Math.min(longIds.length, from + maxSize))));
+                }
+            }
+            return result;
+        }
+
+        @SuppressWarnings({ "rawtypes", "unchecked" })
+        private Collection<Object> boxed() {
+            return ids != null ? ids : (Collection) Longs.asList(longIds);
+        }
+    }
+
+    /**
+     * ids of a value namespace in building. a value namespace may be built from both long and other id
+     * namespaces, so ids are kept by the kind of the id namespace they come from.
+     */
+    private static final class BuildingIds {
+
+        private final LongHashSet longIds = new LongHashSet();
+        private final Set<Object> ids = new HashSet<>();
+
+        private void addAll(BuildIds buildIds) {
+            if (buildIds.longIds != null) {
+                longIds.addAll(buildIds.longIds);
+            } else {
+                ids.addAll(buildIds.ids);
+            }
+        }
+
+        private void removeAll(BuildIds buildIds) {
+            if (buildIds.longIds != null) {
+                longIds.removeAll(buildIds.longIds);
+            } else {
+                // not Set#removeAll, which calls List#contains for each id if the sizes are equal
+                buildIds.ids.forEach(ids::remove);
+            }
+        }
+    }
+
+    /**
+     * ids and values found in one build round (or one drain of {@link DataflowBuild}), indexed by namespace.
+     *
+     * It's also the sink of extractors, bound to one namespace by {@link #bind} before each extractor call.
+     * Ids and values are filtered by the data of build context and collected into the round directly.
+     */
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    private static final class Round implements IdSink, ValueSink {
+
+        // collections larger than this are dropped instead of being reused, so a huge build doesn't leave
+        // its capacity pinned in the pool of the plan
+        private static final int MAX_REUSED_SIZE = 1 << 10;
+
+        private final boolean[] longNamespaces;
+        private final Set<Object>[] ids;
+        private final LongHashSet[] longIds;
+        private final Map<Object, Object>[] values;
+        // namespace index=>data of the namespace in build context
+        private final Map<Object, Object>[] contextData;
+
+        // the namespace the sink is bound to
+        private int sinkNamespace;
+        private Map<Object, Object> sinkContextData;
+        private boolean sinkCollectIds;
+
+        private Round(boolean[] longNamespaces) {
+            this.longNamespaces = longNamespaces;
+            this.ids = new Set[longNamespaces.length];
+            this.longIds = new LongHashSet[longNamespaces.length];
+            this.values = new Map[longNamespaces.length];
+            this.contextData = new Map[longNamespaces.length];
+        }
+
+        private void bind(int namespace, Map<Object, Object> contextData, boolean collectIds) {
+            this.sinkNamespace = namespace;
+            this.sinkContextData = contextData;
+            this.sinkCollectIds = collectIds;
+        }
+
+        @Override
+        public void accept(Object id) {
+            if (id == null) {
+                return;
+            }
+            int namespace = sinkNamespace;
+            if (longNamespaces[namespace]) {
+                acceptLong(((Number) id).longValue());
+                return;
+            }
+            Map<Object, Object> roundValues = values[namespace];
+            if (!sinkContextData.containsKey(id) && (roundValues == null || !roundValues.containsKey(id))) {
+                ids(namespace).add(id);
+            }
+        }
+
+        @Override
+        public void acceptInt(int id) {
+            if (longNamespaces[sinkNamespace]) {
+                acceptLong(id);
+            } else {
+                accept((Integer) id);
+            }
+        }
+
+        @Override
+        public void acceptLong(long id) {
+            int namespace = sinkNamespace;
+            if (!longNamespaces[namespace]) {
+                accept((Long) id);
+                return;
+            }
+            Map<Object, Object> roundValues = values[namespace];
+            if (!containsKey(sinkContextData, id) && (roundValues == null || !containsKey(roundValues, id))) {
+                longIds(namespace).add(id);
+            }
+        }
+
+        @Override
+        public void accept(Object id, Object value) {
+            if (id == null || value == null) {
+                return;
+            }
+            int namespace = sinkNamespace;
+            if (longNamespaces[namespace]) {
+                long longId = ((Number) id).longValue();
+                if (!containsKey(sinkContextData, longId)) {
+                    ((LongHashMap<Object>) (Map) values(namespace)).put(longId, value);
+                    if (sinkCollectIds) {
+                        longIds(namespace).add(longId);
+                    }
+                }
+            } else if (!sinkContextData.containsKey(id)) {
+                values(namespace).put(id, value);
+                if (sinkCollectIds) {
+                    ids(namespace).add(id);
+                }
+            }
+        }
+
+        private boolean hasIds(int namespace) {
+            return ids[namespace] != null && !ids[namespace].isEmpty()
+                    || longIds[namespace] != null && !longIds[namespace].isEmpty();
+        }
+
+        private int idCount(int namespace) {
+            return ids[namespace] != null ? ids[namespace].size() : longIds[namespace].size();
+        }
+
+        private Set<Object> ids(int namespace) {
+            Set<Object> result = ids[namespace];
+            if (result == null) {
+                result = ids[namespace] = new HashSet<>();
+            }
+            return result;
+        }
+
+        private LongHashSet longIds(int namespace) {
+            LongHashSet result = longIds[namespace];
+            if (result == null) {
+                result = longIds[namespace] = new LongHashSet();
+            }
+            return result;
+        }
+
+        private Map<Object, Object> values(int namespace) {
+            Map<Object, Object> result = values[namespace];
+            if (result == null) {
+                result = values[namespace] = longNamespaces[namespace] ? (Map) new LongHashMap<>() : new HashMap<>();
+            }
+            return result;
+        }
+
+        /**
+         * ids found by other round may be values of this one, they are filtered before value builders are called.
+         */
+        private void mergeFrom(Round other) {
+            for (int i = 0; i < longNamespaces.length; i++) {
+                if (other.ids[i] != null && !other.ids[i].isEmpty()) {
+                    ids(i).addAll(other.ids[i]);
+                }
+                if (other.longIds[i] != null && !other.longIds[i].isEmpty()) {
+                    other.longIds[i].forEach(longIds(i)::add);
+                }
+                if (other.values[i] != null && !other.values[i].isEmpty()) {
+                    values(i).putAll(other.values[i]);
+                }
+            }
+        }
+
+        private Set<Object> nextPendingForBuilding() {
+            Set<Object> newPendingForBuilding = new HashSet<>();
+            for (Map<Object, Object> pending : values) {
+                if (pending != null) {
+                    newPendingForBuilding.addAll(pending.values());
+                }
+            }
+            return newPendingForBuilding;
+        }
+
+        private void clear() {
+            for (int i = 0; i < longNamespaces.length; i++) {
+                if (ids[i] != null) {
+                    if (ids[i].size() > MAX_REUSED_SIZE) {
+                        ids[i] = null;
+                    } else {
+                        ids[i].clear();
+                    }
+                }
+                if (longIds[i] != null) {
+                    if (longIds[i].size() > MAX_REUSED_SIZE) {
+                        longIds[i] = null;
+                    } else {
+                        longIds[i].clear();
+                    }
+                }
+                if (values[i] != null) {
+                    if (values[i].size() > MAX_REUSED_SIZE) {
+                        values[i] = null;
+                    } else {
+                        values[i].clear();
+                    }
+                }
+                contextData[i] = null;
+            }
+            sinkContextData = null;
+        }
+    }
+
+    /**
+     * Schedules the building of one build context without round barriers: each value builder is started
+     * once its ids are extracted, and its result is extracted and the dependent builders are started as soon as
+     * it completes. The build finishes when there is neither pending object nor running builder.
+     *
+     * All access to the scheduler state and writes to the build context are guarded by this object. Objects are
+     * extracted by one draining thread at a time, out of the lock if the build context is a
+     * {@link SimpleBuildContext} whose data can be read concurrently, so a parallel extraction never holds it.
+     */
+    @SuppressWarnings("unchecked")
+    private final class DataflowBuild {
+
+        private final B buildContext;
+        private final CompletableFuture<B> result = new CompletableFuture<>();
+        // valueNamespace=>ids in building, to avoid building the same id by concurrent branches
+        private final BuildingIds[] buildingIds = new BuildingIds[namespaces.length];
+
+        // raw futures of running builders, cancelled once the build fails or is cancelled by caller
+        private final Set<CompletableFuture<?>> runningFutures = ConcurrentHashMap.newKeySet();
+
+        private Set<Object> pendingForBuilding = new HashSet<>();
+        private int runningBuilders;
+        private boolean draining;
+        private volatile int rounds;
+
+        private DataflowBuild(B buildContext) {
+            this.buildContext = buildContext;
+            result.whenComplete((r, e) -> {
+                if (e != null) {
+                    runningFutures.forEach(future -> future.cancel(true));
+                }
+            });
+        }
+
+        private <T> CompletableFuture<T> track(CompletableFuture<T> future) {
+            runningFutures.add(future);
+            future.whenComplete((r, e) -> runningFutures.remove(future));
+            return future;
+        }
+
+        private CompletableFuture<B> start(Iterable<?> sources) {
+            synchronized (this) {
+                if (metrics != null) {
+                    long startNanos = onBuildStart(buildContext);
+                    result.whenComplete((r, e) -> onBuildEnd(buildContext, rounds, startNanos, unwrap(e)));
+                }
+                sources.forEach(pendingForBuilding::add);
+            }
+            drain();
+            return result;
+        }
+
+        /**
+         * it should be called without holding the lock, so the extraction doesn't block completed value builders.
+         */
+        private void drain() {
+            synchronized (this) {
+                // a value builder completed while draining just leaves its values in pendingForBuilding
+                if (draining) {
+                    return;
+                }
+                draining = true;
+            }
+            try {
+                while (true) {
+                    Set<Object> objects;
+                    int roundIndex;
+                    long roundStartNanos;
+                    synchronized (this) {
+                        if (pendingForBuilding.isEmpty() || result.isDone()) {
+                            // in the same lock as the check, so no value built in between is left behind
+                            draining = false;
+                            completeIfDone();
+                            return;
+                        }
+                        objects = pendingForBuilding;
+                        pendingForBuilding = new HashSet<>();
+                        roundIndex = ++rounds;
+                        roundStartNanos = onRoundStart(buildContext, roundIndex, objects.size());
+                    }
+                    Round round;
+                    if (buildContext instanceof SimpleBuildContext) {
+                        round = extractAll(objects, buildContext);
+                    } else {
+                        // other build contexts may be plain maps, written by completed value builders
+                        synchronized (this) {
+                            round = extractAll(objects, buildContext);
+                        }
+                    }
+                    synchronized (this) {
+                        mergeToBuildContext(round, buildContext);
+                        onExtractEnd(buildContext, roundIndex, roundStartNanos);
+                        pendingForBuilding.addAll(round.nextPendingForBuilding());
+                        dispatch(round);
+                        roundPool.release(round);
+                        onRoundEnd(buildContext, roundIndex, roundStartNanos);
+                    }
+                }
+            } catch (Throwable e) {
+                synchronized (this) {
+                    draining = false;
+                }
+                result.completeExceptionally(e);
+            }
+        }
+
+        private void completeIfDone() {
+            if (runningBuilders == 0 && pendingForBuilding.isEmpty() && !result.isDone()) {
+                // before completing the result, so the callers' continuations always see the prefetching
+                prefetchLazy(buildContext);
+                result.complete(buildContext);
+            }
+        }
+
+        private void dispatch(Round round) {
+            for (int i = 0; i < namespaces.length; i++) {
+                if (!round.hasIds(i)) {
+                    continue;
+                }
+                for (CompiledValueBuilder<B> valueBuilder : valueBuilders[i]) {
+                    int valueNamespace = valueBuilder.valueNamespace;
+                    BuildingIds building = buildingIds[valueNamespace];
+                    if (building == null) {
+                        building = buildingIds[valueNamespace] = new BuildingIds();
+                    }
+                    BuildIds needToBuildIds = needToBuild(round, i, buildContext, valueNamespace, building);
+                    onIdsFiltered(buildContext, round, i, valueNamespace, needToBuildIds);
+                    if (needToBuildIds.isEmpty()) {
+                        continue;
+                    }
+                    building.addAll(needToBuildIds);
+                    runningBuilders++;
+                    CompletableFuture<Map<Object, Object>> future;
+                    if (valueBuilder.isAsync()) {
+                        long startNanos = onValueBuildStart(valueBuilder, buildContext, needToBuildIds);
+                        future = guard(valueBuilder, buildContext, needToBuildIds, startNanos,
+                                track(valueBuilder.buildAsync(buildContext, needToBuildIds)));
+                    } else if (executor != null) {
+                        long startNanos = onValueBuildStart(valueBuilder, buildContext, needToBuildIds);
+                        future = guard(valueBuilder, buildContext, needToBuildIds, startNanos,
+                                track(supplyAsync(() -> valueBuilder.build(buildContext, needToBuildIds), executor)));
+                    } else {
+                        future = new CompletableFuture<>();
+                        try {
+                            future.complete(buildSync(valueBuilder, buildContext, needToBuildIds));
+                        } catch (Throwable e) {
+                            future.completeExceptionally(e);
+                        }
+                    }
+                    BuildingIds buildingOfNamespace = building;
+                    BiConsumer<Map<Object, Object>, Throwable> onBuilt = (values, e) -> onValueBuilt(valueNamespace,
+                            buildingOfNamespace, needToBuildIds, values, e);
+                    if (valueBuilder.isAsync() && !future.isDone()) {
+                        // not in the thread completing the future (e.g. an event loop of the async client),
+                        // which would run the extraction and the synchronous builders of following rounds.
+                        future.whenCompleteAsync(onBuilt, this::continueOn);
+                    } else {
+                        future.whenComplete(onBuilt);
+                    }
+                }
+            }
+        }
+
+        /**
+         * runs the continuation of an async value builder on the executor, or the default one if there is no
+         * executor. it's run in current thread if the executor rejects, so the build never hangs.
+         */
+        private void continueOn(Runnable continuation) {
+            try {
+                (executor != null ? executor : BatchLoader.DEFAULT_EXECUTOR).execute(continuation);
+            } catch (RejectedExecutionException e) {
+                continuation.run();
+            }
+        }
+
+        private void onValueBuilt(int valueNamespace, BuildingIds building, BuildIds ids,
+                Map<Object, Object> values, Throwable e) {
+            synchronized (this) {
+                runningBuilders--;
+                building.removeAll(ids);
+                if (result.isDone()) {
+                    return;
+                }
+                if (e != null) {
+                    result.completeExceptionally(unwrap(e));
+                    return;
+                }
+                if (values != null) {
+                    buildContext.getData(namespaces[valueNamespace]).putAll(values);
+                    pendingForBuilding.addAll(values.values());
+                }
+            }
+            drain();
+        }
+    }
+}
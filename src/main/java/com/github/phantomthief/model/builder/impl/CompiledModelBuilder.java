@@ -0,0 +1,38 @@
+package com.github.phantomthief.model.builder.impl;
+
+import static org.apache.commons.lang3.builder.ToStringBuilder.reflectionToString;
+import static org.apache.commons.lang3.builder.ToStringStyle.SHORT_PREFIX_STYLE;
+
+import java.util.concurrent.CompletableFuture;
+
+import com.github.phantomthief.model.builder.ModelBuilder;
+import com.github.phantomthief.model.builder.context.BuildContext;
+
+/**
+ * An immutable {@link ModelBuilder} compiled by {@link SimpleModelBuilder#compile()}.
+ *
+ * @author w.vela
+ */
+public final class CompiledModelBuilder<B extends BuildContext> implements ModelBuilder<B> {
+
+    private final BuildPlan<B> plan;
+
+    CompiledModelBuilder(BuildPlan<B> plan) {
+        this.plan = plan;
+    }
+
+    @Override
+    public void buildMulti(Iterable<?> sources, B buildContext) {
+        plan.buildMulti(sources, buildContext);
+    }
+
+    @Override
+    public CompletableFuture<B> buildMultiAsync(Iterable<?> sources, B buildContext) {
+        return plan.buildMultiAsync(sources, buildContext);
+    }
+
+    @Override
+    public String toString() {
+        return reflectionToString(this, SHORT_PREFIX_STYLE);
+    }
+}
@@ -0,0 +1,97 @@
+package com.github.phantomthief.model.builder.impl;
+
+import java.util.List;
+
+import com.github.phantomthief.model.builder.context.BuildContext;
+import com.github.phantomthief.model.builder.metrics.BuildMetricsListener;
+
+/**
+ * @author w.vela
+ */
+final class CompositeMetricsListener implements BuildMetricsListener {
+
+    private final BuildMetricsListener[] listeners;
+
+    private CompositeMetricsListener(BuildMetricsListener[] listeners) {
+        this.listeners = listeners;
+    }
+
+    /**
+     * @return null if there is no listener
+     */
+    static BuildMetricsListener of(List<BuildMetricsListener> listeners) {
+        switch (listeners.size()) {
+            case 0:
+                return null;
+            case 1:
+                return listeners.get(0);
+            default:
+                return new CompositeMetricsListener(listeners.toArray(new BuildMetricsListener[0]));
+        }
+    }
+
+    @Override
+    public void onBuildStart(BuildContext buildContext) {
+        for (BuildMetricsListener listener : listeners) {
+            listener.onBuildStart(buildContext);
+        }
+    }
+
+    @Override
+    public void onBuildEnd(BuildContext buildContext, int rounds, long costNanos, Throwable error) {
+        for (BuildMetricsListener listener : listeners) {
+            listener.onBuildEnd(buildContext, rounds, costNanos, error);
+        }
+    }
+
+    @Override
+    public void onRoundStart(BuildContext buildContext, int round, int objectCount) {
+        for (BuildMetricsListener listener : listeners) {
+            listener.onRoundStart(buildContext, round, objectCount);
+        }
+    }
+
+    @Override
+    public void onExtractEnd(BuildContext buildContext, int round, long costNanos) {
+        for (BuildMetricsListener listener : listeners) {
+            listener.onExtractEnd(buildContext, round, costNanos);
+        }
+    }
+
+    @Override
+    public void onRoundEnd(BuildContext buildContext, int round, long costNanos) {
+        for (BuildMetricsListener listener : listeners) {
+            listener.onRoundEnd(buildContext, round, costNanos);
+        }
+    }
+
+    @Override
+    public void onIdsFiltered(BuildContext buildContext, Object idNamespace, Object valueNamespace,
+            int extractedCount, int toBuildCount) {
+        for (BuildMetricsListener listener : listeners) {
+            listener.onIdsFiltered(buildContext, idNamespace, valueNamespace, extractedCount, toBuildCount);
+        }
+    }
+
+    @Override
+    public void onValueBuildStart(BuildContext buildContext, Object valueNamespace, int batchSize) {
+        for (BuildMetricsListener listener : listeners) {
+            listener.onValueBuildStart(buildContext, valueNamespace, batchSize);
+        }
+    }
+
+    @Override
+    public void onValueBuildEnd(BuildContext buildContext, Object valueNamespace, int batchSize, int hitCount,
+            long costNanos, Throwable error) {
+        for (BuildMetricsListener listener : listeners) {
+            listener.onValueBuildEnd(buildContext, valueNamespace, batchSize, hitCount, costNanos, error);
+        }
+    }
+
+    @Override
+    public void onLazyBuild(BuildContext buildContext, Object namespace, int size, long costNanos) {
+        for (BuildMetricsListener listener : listeners) {
+            listener.onLazyBuild(buildContext, namespace, size, costNanos);
+        }
+    }
+}
@@ -1,36 +1,44 @@
 package com.github.phantomthief.model.builder.impl;
 
-import static com.google.common.collect.HashMultimap.create;
-import static java.util.Collections.emptyMap;
-import static java.util.Collections.emptySet;
-import static java.util.Collections.singleton;
-import static java.util.Collections.singletonMap;
-import static java.util.stream.Collectors.toSet;
-import static org.apache.commons.lang3.ClassUtils.getAllInterfaces;
-import static org.apache.commons.lang3.ClassUtils.getAllSuperclasses;
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.collect.LinkedHashMultimap.create;
 import static org.apache.commons.lang3.builder.ToStringBuilder.reflectionToString;
 import static org.apache.commons.lang3.builder.ToStringStyle.SHORT_PREFIX_STYLE;
 import static org.slf4j.LoggerFactory.getLogger;
 
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
 import java.util.function.BiFunction;
 import java.util.function.Function;
+import java.util.function.ToLongFunction;
 
 import org.slf4j.Logger;
 
 import com.github.phantomthief.model.builder.ModelBuilder;
+import com.github.phantomthief.model.builder.cache.ValueCache;
 import com.github.phantomthief.model.builder.context.BuildContext;
+import com.github.phantomthief.model.builder.context.impl.KeyLazyMap;
 import com.github.phantomthief.model.builder.context.impl.SimpleBuildContext;
-import com.github.phantomthief.model.builder.util.MergeUtils;
+import com.github.phantomthief.model.builder.extract.IdSink;
+import com.github.phantomthief.model.builder.extract.ValueSink;
+import com.github.phantomthief.model.builder.metrics.BuildMetricsListener;
+import com.github.phantomthief.model.builder.util.LongHashMap;
+import com.google.common.collect.Iterables;
 import com.google.common.collect.SetMultimap;
-import com.google.common.collect.Sets;
+import com.google.common.util.concurrent.UncheckedTimeoutException;
 
 /**
  * @author w.vela
@@ -40,173 +48,115 @@ public class SimpleModelBuilder<B extends BuildContext> implements ModelBuilder<
 
     private static final Logger logger = getLogger(SimpleModelBuilder.class);
 
-    // obj.class=>obj->(namespace,ids)
-    private final SetMultimap<Class<?>, Function<Object, KeyPair<Set<Object>>>> idExtractors = create();
-    // obj.class=>obj->(namespace,values)
-    private final SetMultimap<Class<?>, Function<Object, KeyPair<Map<Object, Object>>>> valueExtractors = create();
+    // obj.class=>(namespace,(obj,sink of ids))
+    private final SetMultimap<Class<?>, KeyPair<BiConsumer<Object, IdSink>>> idExtractors = create();
+    // obj.class=>(namespace,obj->primitive id)
+    private final SetMultimap<Class<?>, KeyPair<ToLongFunction<Object>>> longIdExtractors = create();
+    // obj.class=>(namespace,(obj,sink of values))
+    private final SetMultimap<Class<?>, KeyPair<BiConsumer<Object, ValueSink>>> valueExtractors = create();
     // idNamespace=>(valueNamespace, ids->values)
-    private final SetMultimap<Object, KeyPair<BiFunction<B, Collection<Object>, Map<Object, Object>>>> valueBuilders = create();
+    private final SetMultimap<Object, ValueBuilder<B>> valueBuilders = create();
     // targetNamespace=>Function<BuildContext, Object>
     private final Map<Object, Function<BuildContext, Map<Object, Object>>> lazyBuilders = new HashMap<>();
-
-    private final ConcurrentMap<Class<?>, Set<Function<Object, KeyPair<Set<Object>>>>> cachedIdExtractors = new ConcurrentHashMap<>();
-    private final ConcurrentMap<Class<?>, Set<Function<Object, KeyPair<Map<Object, Object>>>>> cachedValueExtractors = new ConcurrentHashMap<>();
+    // valueNamespace=>options of its value builders
+    private final Map<Object, ValueOptions> valueOptions = new HashMap<>();
+    // namespaces whose ids are primitive long
+    private final Set<Object> longNamespaces = new HashSet<>();
+    private final List<BuildMetricsListener> metricsListeners = new ArrayList<>();
+    // lazy namespaces to build in background after each build
+    private final Set<Object> prefetchNamespaces = new HashSet<>();
 
     private volatile boolean alreadyBuilt = false;
     private Runnable onConflictListener;
+    private Executor executor;
+    // nullable
+    private ParallelExtracting parallelExtracting;
+    // rebuilt on first build after any registration
+    private volatile BuildPlan<B> plan;
 
     @Override
     public void buildMulti(Iterable<?> sources, B buildContext) {
         alreadyBuilt = true;
-        if (sources == null) {
-            return;
-        }
-        if (buildContext instanceof SimpleBuildContext) {
-            SimpleBuildContext simpleBuildContext = (SimpleBuildContext) buildContext;
-            lazyBuilders.forEach(simpleBuildContext::setupLazyNodeData);
-        }
-
-        Set<Object> pendingForBuilding = Sets.newHashSet(sources);
-
-        while (!pendingForBuilding.isEmpty()) {
-            // namespace->ids
-            Map<Object, Set<Object>> idsMap = new HashMap<>();
-            // namespace->values
-            Map<Object, Map<Object, Object>> valuesMap = new HashMap<>();
-
-            for (Object object : pendingForBuilding) {
-                extract(object, buildContext, idsMap, valuesMap);
-            }
-
-            valueBuild(idsMap, valuesMap, buildContext);
-            mergeToBuildContext(valuesMap, buildContext);
-
-
-            Set<Object> newPendingForBuilding = new HashSet<>();
-            for (Map<Object, Object> pending : valuesMap.values()) {
-                newPendingForBuilding.addAll(pending.values());
-            }
-            pendingForBuilding = newPendingForBuilding;
-        }
+        plan().buildMulti(sources, buildContext);
     }
 
-    public SimpleModelBuilder<B> onConflictCheckListener(Runnable listener) {
-        onConflictListener = listener;
-        return this;
+    /**
+     * same as {@link #buildMulti}, but never blocks on value builders registered by {@link #buildValueAsync}
+     * (or on the executor given by {@link #withExecutor}).
+     * there is no build round here: values built by a builder are extracted and their dependents are
+     * dispatched as soon as the builder completes. that's on the executor (or a default one without executor)
+     * instead of the thread completing an async builder, e.g. an event loop.
+     */
+    @Override
+    public CompletableFuture<B> buildMultiAsync(Iterable<?> sources, B buildContext) {
+        alreadyBuilt = true;
+        return plan().buildMultiAsync(sources, buildContext);
     }
 
-    private void mergeToBuildContext(Map<Object, Map<Object, Object>> valuesMap, B buildContext) {
-        for (Entry<Object, Map<Object, Object>> entry : valuesMap.entrySet()) {
-            buildContext.getData(entry.getKey()).putAll(entry.getValue());
-        }
+    /**
+     * @return an immutable builder with a snapshot of current registrations, which are indexed and resolved
+     * ahead of time. registrations after this call don't affect the returned builder.
+     */
+    public CompiledModelBuilder<B> compile() {
+        alreadyBuilt = true;
+        return new CompiledModelBuilder<>(plan());
     }
 
-    private void valueBuild(Map<Object, Set<Object>> idsMap,
-            Map<Object, Map<Object, Object>> valuesMap, B buildContext) {
-        for (Entry<Object, Set<Object>> entry : idsMap.entrySet()) {
-            for (KeyPair<BiFunction<B, Collection<Object>, Map<Object, Object>>> valueBuilderWrapper
-                    : valueBuilders.get(entry.getKey())) {
-                Object valueNamespace = valueBuilderWrapper.getKey();
-                BiFunction<B, Collection<Object>, Map<Object, Object>> valueBuilder = valueBuilderWrapper
-                        .getValue();
-                Set<Object> needToBuildIds = filterIdSetOnBuild(entry.getValue(), buildContext, valuesMap,
-                        valueNamespace);
-                Map<Object, Object> values = valueBuilder.apply(buildContext, needToBuildIds);
-                if (values != null) {
-                    valuesMap.merge(valueNamespace, values, MergeUtils::merge);
+    private BuildPlan<B> plan() {
+        BuildPlan<B> result = plan;
+        if (result == null) {
+            synchronized (this) {
+                result = plan;
+                if (result == null) {
+                    result = new BuildPlan<>(idExtractors, longIdExtractors, valueExtractors, valueBuilders,
+                            longNamespaces, valueOptions, lazyBuilders, prefetchNamespaces, executor,
+                            parallelExtracting, metricsListeners);
+                    plan = result;
                 }
             }
         }
+        return result;
     }
 
-    private Set<Object> filterIdSetOnBuild(Set<Object> original, B buildContext,
-            Map<Object, Map<Object, Object>> valuesMap, Object valueNamespace) {
-        Set<Object> buildContextExistIds = buildContext.getData(valueNamespace).keySet();
-        Set<Object> valueMapExistIds = computeIfAbsent(valuesMap, valueNamespace, i -> new HashMap<>()).keySet();
-        if (buildContextExistIds.isEmpty() && valueMapExistIds.isEmpty()) {
-            return original;
-        }
-
-        Set<Object> filteredIds = new HashSet<>(original.size());
-        for (Object value : original) {
-            if (!buildContextExistIds.contains(value) && !valueMapExistIds.contains(value)) {
-                filteredIds.add(value);
-            }
-        }
-        return filteredIds;
-    }
-
-    private static <K, V> V computeIfAbsent(Map<K, V> map, K key, Function<Object, V> function) {
-        V value = map.get(key);
-        if (value == null) {
-            value = function.apply(key);
-            map.put(key, value);
-        }
-        return value;
+    public SimpleModelBuilder<B> onConflictCheckListener(Runnable listener) {
+        onConflictListener = listener;
+        return this;
     }
 
-    // return new found data.
-    private void extract(Object obj, B buildContext, Map<Object, Set<Object>> idsMap,
-            Map<Object, Map<Object, Object>> valuesMap) {
-        if (obj == null) {
-            return;
-        }
-        Set<Function<Object, KeyPair<Map<Object, Object>>>> localValueExtractors =
-                computeIfAbsent(cachedValueExtractors, obj.getClass(),
-                        t -> getAllSuperTypes((Class<?>) t).stream()
-                                .flatMap(i -> this.valueExtractors.get(i).stream()).collect(toSet()));
-        for (Function<Object, KeyPair<Map<Object, Object>>> valueExtractor : localValueExtractors) {
-            KeyPair<Map<Object, Object>> values = valueExtractor.apply(obj);
-            Map<Object, Object> filtered = filterValueMap(values, buildContext);
-            idsMap.merge(values.getKey(), new HashSet<>(filtered.keySet()),
-                    MergeUtils::merge);
-            valuesMap.merge(values.getKey(), filtered, MergeUtils::merge);
-        }
-
-        Set<Function<Object, KeyPair<Set<Object>>>> localIdExtractors = computeIfAbsent(
-                cachedIdExtractors, obj.getClass(),
-                t -> getAllSuperTypes((Class<?>) t).stream()
-                        .flatMap(i -> idExtractors.get(i).stream()).collect(toSet()));
-
-        for (Function<Object, KeyPair<Set<Object>>> idExtractor : localIdExtractors) {
-            KeyPair<Set<Object>> ids = idExtractor.apply(obj);
-            idsMap.merge(ids.getKey(), filterIdSet(ids, buildContext, valuesMap),
-                    MergeUtils::merge);
-        }
+    /**
+     * run value builders concurrently on given executor, a builder is dispatched as soon as
+     * the values it depends on are ready (see {@link #buildMultiAsync}).
+     * the value builders are called round by round in caller thread by default.
+     */
+    public SimpleModelBuilder<B> withExecutor(Executor executor) {
+        onRegister();
+        this.executor = executor;
+        return this;
     }
 
-    private Set<Object> filterIdSet(KeyPair<Set<Object>> keyPair, B buildContext,
-            Map<Object, Map<Object, Object>> valuesMap) {
-        Set<Object> buildContextExistIds = buildContext.getData(keyPair.getKey()).keySet();
-        Set<Object> valueMapExistIds = computeIfAbsent(valuesMap, keyPair.getKey(), i -> new HashMap<>()).keySet();
-
-        if (buildContextExistIds.isEmpty() && valueMapExistIds.isEmpty()) {
-            return new HashSet<>(keyPair.getValue());
-        }
-
-        Set<Object> filteredIds = new HashSet<>(keyPair.getValue().size());
-        for (Object value : keyPair.getValue()) {
-            if (!buildContextExistIds.contains(value) && !valueMapExistIds.contains(value)) {
-                filteredIds.add(value);
-            }
-        }
-        return filteredIds;
+    /**
+     * extract the objects of a build round on given pool if there are at least {@code threshold} of them,
+     * each worker collects ids and values of its part, and they are merged before value builders are called.
+     * all extractors should be thread safe then. rounds with fewer objects are extracted in caller thread.
+     * the data of build context is read by the workers concurrently, so it's only for {@link SimpleBuildContext},
+     * other build contexts are always extracted in caller thread.
+     */
+    public SimpleModelBuilder<B> parallelExtract(ForkJoinPool pool, int threshold) {
+        checkNotNull(pool);
+        checkArgument(threshold > 0);
+        onRegister();
+        this.parallelExtracting = new ParallelExtracting(pool, threshold);
+        return this;
     }
 
-    private Map<Object, Object> filterValueMap(KeyPair<Map<Object, Object>> keyPair,
-            B buildContext) {
-        Map<Object, Object> buildContextData = buildContext.getData(keyPair.getKey());
-        if (buildContextData.isEmpty()) {
-            return new HashMap<>(keyPair.getValue());
-        }
-
-        Map<Object, Object> filteredValueMap = new HashMap<>(keyPair.getValue().size());
-        for (Entry<Object, Object> entry: keyPair.value.entrySet()) {
-            if (!buildContextData.containsKey(entry.getKey())) {
-                filteredValueMap.put(entry.getKey(), entry.getValue());
-            }
-        }
-        return filteredValueMap;
+    /**
+     * report builds to given listener, multiple listeners are called in registration order.
+     */
+    public SimpleModelBuilder<B> metricsListener(BuildMetricsListener listener) {
+        checkNotNull(listener);
+        onRegister();
+        metricsListeners.add(listener);
+        return this;
     }
 
     /**
@@ -258,16 +208,17 @@ public class SimpleModelBuilder<B extends BuildContext> implements ModelBuilder<
     @SuppressWarnings("rawtypes")
     @Deprecated
     public SimpleModelBuilder<B> lazy(Lazy lazy) {
-        tryCheckConflict();
+        onRegister();
         lazyBuilders.put(lazy.targetNamespace(), buildContext -> (Map) ((BiFunction) lazy.builder())
                 .apply(buildContext, buildContext.getData(lazy.sourceNamespace()).keySet()));
         return this;
     }
 
-    private void tryCheckConflict() {
+    private void onRegister() {
         if (alreadyBuilt && onConflictListener != null) {
             onConflictListener.run();
         }
+        plan = null;
     }
 
     public <E> SimpleModelBuilder<B> valueFromSelf(Class<E> type, Function<E, Object> idExtractor) {
@@ -288,6 +239,52 @@ public class SimpleModelBuilder<B extends BuildContext> implements ModelBuilder<
         return this;
     }
 
+    /**
+     * like {@link #extractId}, but the extractor returns ids as a set (never null), which is used as is without
+     * any type check. it's mostly for extractors generated from
+     * {@link com.github.phantomthief.model.builder.annotation.RefId}.
+     */
+    public <E> SimpleModelBuilder<B> extractIds(Class<E> type, Function<E, ? extends Set<?>> idsExtractor,
+            Object toIdNamespace) {
+        return extractIdsTo(type, (obj, sink) -> sink.acceptAll(idsExtractor.apply(obj)), toIdNamespace);
+    }
+
+    /**
+     * like {@link #extractValue}, but the extractor returns values by id (never null), which is used as is
+     * without any type check. it's mostly for extractors generated from
+     * {@link com.github.phantomthief.model.builder.annotation.EmbeddedValue}.
+     */
+    public <E> SimpleModelBuilder<B> extractValues(Class<E> type, Function<E, ? extends Map<?, ?>> valuesExtractor,
+            Object toValueNamespace) {
+        return extractValuesTo(type, (obj, sink) -> valuesExtractor.apply(obj).forEach(sink::accept),
+                toValueNamespace);
+    }
+
+    /**
+     * extract ids by pushing them into the sink, which collects them into the build round directly,
+     * so nothing is allocated per model (see {@link IdSink}).
+     */
+    @SuppressWarnings("rawtypes")
+    public <E> SimpleModelBuilder<B> extractIdsTo(Class<E> type, BiConsumer<? super E, IdSink> idExtractor,
+            Object toIdNamespace) {
+        checkNotNull(idExtractor);
+        onRegister();
+        idExtractors.put(type, new KeyPair<>(toIdNamespace, (BiConsumer) idExtractor));
+        return this;
+    }
+
+    /**
+     * extract values with their ids by pushing them into the sink (see {@link ValueSink}).
+     */
+    @SuppressWarnings("rawtypes")
+    public <E> SimpleModelBuilder<B> extractValuesTo(Class<E> type, BiConsumer<? super E, ValueSink> valueExtractor,
+            Object toValueNamespace) {
+        checkNotNull(valueExtractor);
+        onRegister();
+        valueExtractors.put(type, new KeyPair<>(toValueNamespace, (BiConsumer) valueExtractor));
+        return this;
+    }
+
     public <K> SimpleModelBuilder<B> buildValue(Object idNamespace,
             Function<Collection<K>, Map<K, ?>> valueBuilder) {
         build(idNamespace, valueBuilder);
@@ -312,6 +309,153 @@ public class SimpleModelBuilder<B extends BuildContext> implements ModelBuilder<
         return this;
     }
 
+    /**
+     * register a non-blocking value builder, the returned stage should be completed by the caller's own threads
+     * (e.g. an async rpc client). {@link #buildMulti} waits for it, {@link #buildMultiAsync} doesn't.
+     */
+    @SuppressWarnings("rawtypes")
+    public <K> SimpleModelBuilder<B> buildValueAsync(Object idNamespace,
+            BiFunction<B, Collection<K>, ? extends CompletionStage<? extends Map<K, ?>>> valueBuilder,
+            Object toValueNamespace) {
+        return addValueBuilder(idNamespace, ValueBuilder.async(toValueNamespace, (BiFunction) valueBuilder, false));
+    }
+
+    public <K> SimpleModelBuilder<B> buildValueAsync(Object idNamespace,
+            Function<Collection<K>, ? extends CompletionStage<? extends Map<K, ?>>> valueBuilder,
+            Object toValueNamespace) {
+        return addValueBuilder(idNamespace, ValueBuilder.async(toValueNamespace,
+                (context, ids) -> (CompletionStage) ((Function) valueBuilder).apply(ids), true));
+    }
+
+    /**
+     * extract a primitive id (int ids are widened), the id namespace becomes a long namespace:
+     * its ids are collected without boxing, and its data in build context is a {@link LongHashMap}.
+     */
+    @SuppressWarnings("rawtypes")
+    public <E> SimpleModelBuilder<B> extractLongId(Class<E> type, ToLongFunction<E> idExtractor,
+            Object toIdNamespace) {
+        onRegister();
+        longNamespaces.add(toIdNamespace);
+        longIdExtractors.put(type, new KeyPair<>(toIdNamespace, (ToLongFunction) idExtractor));
+        return this;
+    }
+
+    /**
+     * build values by primitive ids, both namespaces become long namespaces (see {@link #extractLongId}).
+     * other value builders on a long id namespace still receive boxed {@link Long} ids.
+     */
+    @SuppressWarnings("rawtypes")
+    public SimpleModelBuilder<B> buildLongValue(Object idNamespace,
+            BiFunction<B, long[], Map<Long, ?>> valueBuilder, Object toValueNamespace) {
+        longNamespaces.add(idNamespace);
+        longNamespaces.add(toValueNamespace);
+        return addValueBuilder(idNamespace, ValueBuilder.ofLong(toValueNamespace, (BiFunction) valueBuilder, false));
+    }
+
+    @SuppressWarnings("rawtypes")
+    public SimpleModelBuilder<B> buildLongValue(Object idNamespace,
+            Function<long[], Map<Long, ?>> valueBuilder, Object toValueNamespace) {
+        longNamespaces.add(idNamespace);
+        longNamespaces.add(toValueNamespace);
+        return addValueBuilder(idNamespace, ValueBuilder.ofLong(toValueNamespace,
+                (context, ids) -> (Map) valueBuilder.apply(ids), true));
+    }
+
+    private SimpleModelBuilder<B> addValueBuilder(Object idNamespace, ValueBuilder<B> valueBuilder) {
+        onRegister();
+        valueBuilders.put(idNamespace, valueBuilder);
+        return this;
+    }
+
+    /**
+     * share values of the namespace among all builds by given cache, value builders of the namespace are
+     * called only with ids missed in cache.
+     * the cached namespace should be built only by value builders without build context (the {@link Function}
+     * variants), otherwise an {@link IllegalStateException} is thrown on building.
+     */
+    public SimpleModelBuilder<B> cacheValue(Object valueNamespace, ValueCache cache) {
+        onRegister();
+        valueOptions(valueNamespace).cache = checkNotNull(cache);
+        return this;
+    }
+
+    /**
+     * collect ids of the namespace requested by concurrent builds for at most given window (or until
+     * maxBatchSize ids collected), and build them by one value builder call. ids in building are shared by
+     * all builds requesting them.
+     * the batched value builders are dispatched on the executor given by {@link #withExecutor} (or a shared
+     * daemon pool). like {@link #cacheValue}, they shouldn't depend on build context.
+     */
+    public SimpleModelBuilder<B> batchValue(Object valueNamespace, long window, TimeUnit unit, int maxBatchSize) {
+        checkArgument(window >= 0);
+        checkArgument(maxBatchSize > 0);
+        onRegister();
+        valueOptions(valueNamespace).batching = new Batching(unit.toNanos(window), maxBatchSize);
+        return this;
+    }
+
+    /**
+     * split ids more than maxBatchSize into chunks for value builders of the namespace, the chunks are built
+     * concurrently on the executor given by {@link #withExecutor}, or one by one in caller thread if it's absent.
+     */
+    public SimpleModelBuilder<B> chunkValue(Object valueNamespace, int maxBatchSize) {
+        return chunkValue(valueNamespace, maxBatchSize, null);
+    }
+
+    /**
+     * same as {@link #chunkValue(Object, int)}, but chunks are built on given executor.
+     */
+    public SimpleModelBuilder<B> chunkValue(Object valueNamespace, int maxBatchSize, Executor executor) {
+        checkArgument(maxBatchSize > 0);
+        onRegister();
+        valueOptions(valueNamespace).chunking = new Chunking(maxBatchSize, executor);
+        return this;
+    }
+
+    /**
+     * time out each call of value builders of the namespace after given timeout, it's shortened by the
+     * deadline of build context (see {@link SimpleBuildContext#withTimeout}).
+     * a timed out call is cancelled. the build fails by {@link UncheckedTimeoutException} unless the namespace
+     * is optional (see {@link #optionalValue}).
+     * synchronous builders called in caller thread can't be timed out, they are only skipped once the deadline
+     * is passed.
+     */
+    public SimpleModelBuilder<B> timeoutValue(Object valueNamespace, long timeout, TimeUnit unit) {
+        checkArgument(timeout >= 0);
+        onRegister();
+        valueOptions(valueNamespace).timeoutNanos = unit.toNanos(timeout);
+        return this;
+    }
+
+    /**
+     * mark the namespace nice-to-have: if its value builders fail or time out, the build goes on, and the
+     * namespace is left empty and marked degraded on {@link SimpleBuildContext#isDegraded}.
+     */
+    public SimpleModelBuilder<B> optionalValue(Object valueNamespace) {
+        onRegister();
+        valueOptions(valueNamespace).optional = true;
+        return this;
+    }
+
+    private ValueOptions valueOptions(Object valueNamespace) {
+        return valueOptions.computeIfAbsent(valueNamespace, it -> new ValueOptions());
+    }
+
+    /**
+     * invalidate cached values registered by {@link #cacheValue}, ids of long namespaces can be any integral.
+     */
+    public void invalidateCache(Object valueNamespace, Iterable<?> ids) {
+        ValueOptions options = valueOptions.get(valueNamespace);
+        ValueCache cache = options != null ? options.cache : null;
+        if (cache != null) {
+            if (longNamespaces.contains(valueNamespace)) {
+                cache.invalidateAll(Iterables.transform(ids, id -> ((Number) id).longValue()));
+            } else {
+                cache.invalidateAll(ids);
+            }
+        }
+    }
+
     public <K> SimpleModelBuilder<B> lazyBuild(Object sourceNamespace,
             Function<Collection<K>, Map<K, ?>> builder, Object targetNamespace) {
         lazy(LazyBuilder.on(sourceNamespace, builder, targetNamespace));
@@ -324,12 +468,37 @@ public class SimpleModelBuilder<B extends BuildContext> implements ModelBuilder<
         return this;
     }
 
-    private Set<Class<?>> getAllSuperTypes(Class<?> iface) {
-        Set<Class<?>> classes = new HashSet<>();
-        classes.add(iface);
-        classes.addAll(getAllInterfaces(iface));
-        classes.addAll(getAllSuperclasses(iface));
-        return classes;
+    /**
+     * like {@link #lazyBuild}, but the namespace is built by keys: only ids read from the namespace are built,
+     * misses are built in batch with ids given by {@link SimpleBuildContext#prefetchKeys} (see {@link KeyLazyMap}).
+     * it takes effect only for {@link SimpleBuildContext}.
+     */
+    @SuppressWarnings("rawtypes")
+    public <K> SimpleModelBuilder<B> lazyBuildByKey(Object sourceNamespace,
+            Function<Collection<K>, Map<K, ?>> builder, Object targetNamespace) {
+        onRegister();
+        lazyBuilders.put(targetNamespace, new KeyLazy(targetNamespace, sourceNamespace,
+                (context, ids) -> (Map) ((Function) builder).apply(ids)));
+        return this;
+    }
+
+    @SuppressWarnings("rawtypes")
+    public <K> SimpleModelBuilder<B> lazyBuildByKey(Object sourceNamespace,
+            BiFunction<B, Collection<K>, Map<K, ?>> builder, Object targetNamespace) {
+        onRegister();
+        lazyBuilders.put(targetNamespace, new KeyLazy(targetNamespace, sourceNamespace, (BiFunction) builder));
+        return this;
+    }
+
+    /**
+     * build given lazy namespace in background once a build completes (only for {@link SimpleBuildContext}),
+     * on the executor given by {@link #withExecutor}, or a shared daemon pool.
+     * {@link BuildContext#getData} waits for it if it's still building, the lazy namespace is still built once.
+     */
+    public SimpleModelBuilder<B> prefetchLazy(Object lazyNamespace) {
+        onRegister();
+        prefetchNamespaces.add(lazyNamespace);
+        return this;
     }
 
     @Override
@@ -346,12 +515,38 @@ public class SimpleModelBuilder<B extends BuildContext> implements ModelBuilder<
         BiFunction<?, ?, ?> builder();
     }
 
-    private static final class KeyPair<V> implements Entry<Object, V> {
+    /**
+     * the lazy builder of a namespace built by keys, it creates a {@link KeyLazyMap} for each build context.
+     */
+    static final class KeyLazy implements Function<BuildContext, Map<Object, Object>> {
+
+        final Object namespace;
+        final Object sourceNamespace;
+        final BiFunction<BuildContext, Collection<Object>, Map<Object, ?>> builder;
+
+        KeyLazy(Object namespace, Object sourceNamespace,
+                BiFunction<BuildContext, Collection<Object>, Map<Object, ?>> builder) {
+            this.namespace = namespace;
+            this.sourceNamespace = sourceNamespace;
+            this.builder = builder;
+        }
+
+        KeyLazy withBuilder(BiFunction<BuildContext, Collection<Object>, Map<Object, ?>> builder) {
+            return new KeyLazy(namespace, sourceNamespace, builder);
+        }
+
+        @Override
+        public Map<Object, Object> apply(BuildContext buildContext) {
+            return new KeyLazyMap<>(buildContext, namespace, sourceNamespace, builder);
+        }
+    }
+
+    static final class KeyPair<V> implements Entry<Object, V> {
 
         private final Object key;
         private final V value;
 
-        private KeyPair(Object key, V value) {
+        KeyPair(Object key, V value) {
             this.key = key;
             this.value = value;
         }
@@ -372,6 +567,88 @@ public class SimpleModelBuilder<B extends BuildContext> implements ModelBuilder<
         }
     }
 
+    static final class ValueOptions {
+
+        // all nullable
+        ValueCache cache;
+        Batching batching;
+        Chunking chunking;
+        // negative if there is no timeout
+        long timeoutNanos = -1;
+        boolean optional;
+    }
+
+    static final class Batching {
+
+        final long windowNanos;
+        final int maxBatchSize;
+
+        private Batching(long windowNanos, int maxBatchSize) {
+            this.windowNanos = windowNanos;
+            this.maxBatchSize = maxBatchSize;
+        }
+    }
+
+    static final class Chunking {
+
+        final int maxBatchSize;
+        // nullable
+        final Executor executor;
+
+        private Chunking(int maxBatchSize, Executor executor) {
+            this.maxBatchSize = maxBatchSize;
+            this.executor = executor;
+        }
+    }
+
+    static final class ParallelExtracting {
+
+        final ForkJoinPool pool;
+        final int threshold;
+
+        private ParallelExtracting(ForkJoinPool pool, int threshold) {
+            this.pool = pool;
+            this.threshold = threshold;
+        }
+    }
+
+    static final class ValueBuilder<B extends BuildContext> {
+
+        final Object valueNamespace;
+        final BiFunction<B, Collection<Object>, Map<Object, Object>> builder;
+        final BiFunction<B, Collection<Object>, CompletionStage<Map<Object, Object>>> asyncBuilder;
+        final BiFunction<B, long[], Map<Object, Object>> longBuilder;
+        // if the builder doesn't depend on build context, so its values can be shared among builds
+        final boolean contextFree;
+
+        private ValueBuilder(Object valueNamespace,
+                BiFunction<B, Collection<Object>, Map<Object, Object>> builder,
+                BiFunction<B, Collection<Object>, CompletionStage<Map<Object, Object>>> asyncBuilder,
+                BiFunction<B, long[], Map<Object, Object>> longBuilder, boolean contextFree) {
+            this.valueNamespace = valueNamespace;
+            this.builder = builder;
+            this.asyncBuilder = asyncBuilder;
+            this.longBuilder = longBuilder;
+            this.contextFree = contextFree;
+        }
+
+        static <B extends BuildContext> ValueBuilder<B> of(Object valueNamespace,
+                BiFunction<B, Collection<Object>, Map<Object, Object>> builder, boolean contextFree) {
+            return new ValueBuilder<>(valueNamespace, builder, null, null, contextFree);
+        }
+
+        static <B extends BuildContext> ValueBuilder<B> async(Object valueNamespace,
+                BiFunction<B, Collection<Object>, CompletionStage<Map<Object, Object>>> asyncBuilder,
+                boolean contextFree) {
+            return new ValueBuilder<>(valueNamespace, null, asyncBuilder, null, contextFree);
+        }
+
+        static <B extends BuildContext> ValueBuilder<B> ofLong(Object valueNamespace,
+                BiFunction<B, long[], Map<Object, Object>> longBuilder, boolean contextFree) {
+            return new ValueBuilder<>(valueNamespace, null, null, longBuilder, contextFree);
+        }
+    }
+
     @Deprecated
     public final class OnBuilder<E> {
 
@@ -409,38 +686,28 @@ public class SimpleModelBuilder<B extends BuildContext> implements ModelBuilder<
             }
 
             public SimpleModelBuilder<B> to(Object valueNamespace) {
-                tryCheckConflict();
-                valueExtractors.put(objType, obj -> {
+                onRegister();
+                valueExtractors.put(objType, new KeyPair<>(valueNamespace, (obj, sink) -> {
                     Object rawValue = valueExtractor.apply((E) obj);
-                    Map<Object, Object> value;
                     if (rawValue == null) {
-                        value = emptyMap();
-                    } else {
-                        if (idExtractor != null) {
-                            if (rawValue instanceof Iterable) {
-                                if (rawValue instanceof Collection) {
-                                    value = new HashMap<>(((Collection) rawValue).size());
-                                } else {
-                                    value = new HashMap<>();
-                                }
-                                for (E e : ((Iterable<E>) rawValue)) {
-                                    value.put(idExtractor.apply(e), e);
-                                }
-                            } else {
-                                value = singletonMap(idExtractor.apply(rawValue), rawValue);
+                        return;
+                    }
+                    if (idExtractor != null) {
+                        if (rawValue instanceof Iterable) {
+                            for (Object e : ((Iterable<Object>) rawValue)) {
+                                sink.accept(idExtractor.apply(e), e);
                             }
                         } else {
-                            if (rawValue instanceof Map) {
-                                value = (Map<Object, Object>) rawValue;
-                            } else {
-                                logger.warn("invalid value extractor for:{}->{}", obj, rawValue);
-                                value = emptyMap();
-                            }
+                            sink.accept(idExtractor.apply(rawValue), rawValue);
+                        }
+                    } else {
+                        if (rawValue instanceof Map) {
+                            ((Map<Object, Object>) rawValue).forEach(sink::accept);
+                        } else {
+                            logger.warn("invalid value extractor for:{}->{}", obj, rawValue);
                         }
                     }
-                    return new KeyPair<>(valueNamespace, value);
-                });
-                cachedValueExtractors.clear();
+                }));
                 return SimpleModelBuilder.this;
             }
         }
@@ -454,22 +721,15 @@ public class SimpleModelBuilder<B extends BuildContext> implements ModelBuilder<
             }
 
             public SimpleModelBuilder<B> to(Object idNamespace) {
-                tryCheckConflict();
-                idExtractors.put(objType, obj -> {
+                onRegister();
+                idExtractors.put(objType, new KeyPair<>(idNamespace, (obj, sink) -> {
                     Object rawId = idExtractor.apply((E) obj);
-                    Set<Object> ids;
-                    if (rawId == null) {
-                        ids = emptySet();
+                    if (rawId instanceof Iterable) {
+                        sink.acceptAll((Iterable<?>) rawId);
                     } else {
-                        if (rawId instanceof Iterable) {
-                            ids = Sets.newHashSet((Iterable) rawId);
-                        } else {
-                            ids = singleton(rawId);
-                        }
+                        sink.accept(rawId);
                     }
-                    return new KeyPair<>(idNamespace, ids);
-                });
-                cachedIdExtractors.clear();
+                }));
                 return SimpleModelBuilder.this;
             }
         }
@@ -486,27 +746,29 @@ public class SimpleModelBuilder<B extends BuildContext> implements ModelBuilder<
 
         @SuppressWarnings("rawtypes")
         public <K> BuildingValue<K> by(Function<Collection<K>, Map<K, ?>> valueBuilder) {
-            return new BuildingValue<>((c, ids) -> (Map) valueBuilder.apply(ids));
+            return new BuildingValue<>((c, ids) -> (Map) valueBuilder.apply(ids), true);
         }
 
         @SuppressWarnings("rawtypes")
         public <K> BuildingValue<K> by(BiFunction<B, Collection<K>, Map<K, ?>> valueBuilder) {
-            return new BuildingValue<>((BiFunction) valueBuilder);
+            return new BuildingValue<>((BiFunction) valueBuilder, false);
         }
 
         public final class BuildingValue<K> {
 
             private final BiFunction<B, Collection<K>, Map<K, Object>> valueBuilderFunction;
+            private final boolean contextFree;
 
             private BuildingValue(
-                    BiFunction<B, Collection<K>, Map<K, Object>> valueBuilderFunction) {
+                    BiFunction<B, Collection<K>, Map<K, Object>> valueBuilderFunction, boolean contextFree) {
                 this.valueBuilderFunction = valueBuilderFunction;
+                this.contextFree = contextFree;
             }
 
             @SuppressWarnings("rawtypes")
             public SimpleModelBuilder<B> to(Object valueNamespace) {
-                tryCheckConflict();
-                valueBuilders.put(idNamespace, new KeyPair(valueNamespace, valueBuilderFunction));
+                addValueBuilder(idNamespace,
+                        ValueBuilder.of(valueNamespace, (BiFunction) valueBuilderFunction, contextFree));
                 return SimpleModelBuilder.this;
             }
         }
@@ -0,0 +1,60 @@
+package com.github.phantomthief.model.builder.impl;
+
+import static java.util.concurrent.Executors.newSingleThreadScheduledExecutor;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeoutException;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * A shared timer of model builders, it only completes futures and triggers flushes, value builders never run on it.
+ *
+ * @author w.vela
+ */
+final class Timers {
+
+    static final ScheduledExecutorService SCHEDULER = newSingleThreadScheduledExecutor(
+            new ThreadFactoryBuilder()
+                    .setNameFormat("model-builder-timer")
+                    .setDaemon(true)
+                    .build());
+
+    private Timers() {
+        throw new UnsupportedOperationException();
+    }
+
+    /**
+     * @return a future completed by given future, or by a {@link TimeoutException} after given timeout,
+     * and given future is cancelled then.
+     */
+    static <T> CompletableFuture<T> withTimeout(CompletableFuture<T> future, long timeoutNanos, Object namespace) {
+        if (timeoutNanos == Long.MAX_VALUE || future.isDone()) {
+            return future;
+        }
+        CompletableFuture<T> result = new CompletableFuture<>();
+        if (timeoutNanos <= 0) {
+            result.completeExceptionally(timeout(namespace));
+        } else {
+            ScheduledFuture<?> timer = SCHEDULER.schedule(() -> result.completeExceptionally(timeout(namespace)),
+                    timeoutNanos, NANOSECONDS);
+            future.whenComplete((value, e) -> {
+                timer.cancel(false);
+                if (e != null) {
+                    result.completeExceptionally(e);
+                } else {
+                    result.complete(value);
+                }
+            });
+        }
+        // the returned future is completed after the cancellation, so is everything depends on it.
+        return result.whenComplete((value, e) -> future.cancel(true));
+    }
+
+    static TimeoutException timeout(Object namespace) {
+        return new TimeoutException("building of value namespace [" + namespace + "] timed out.");
+    }
+}
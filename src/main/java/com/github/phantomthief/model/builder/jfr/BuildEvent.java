@@ -0,0 +1,25 @@
+package com.github.phantomthief.model.builder.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * @author w.vela
+ */
+@Name("com.github.phantomthief.model.builder.Build")
+@Label("Model Build")
+@Category("Model View Builder")
+@Description("A build of model builder, from the sources to the end of the last value builder.")
+@StackTrace(false)
+final class BuildEvent extends Event {
+
+    @Label("Rounds")
+    int rounds;
+
+    @Label("Error")
+    String error;
+}
@@ -0,0 +1,91 @@
+package com.github.phantomthief.model.builder.jfr;
+
+import java.util.concurrent.ConcurrentMap;
+
+import com.github.phantomthief.model.builder.context.BuildContext;
+import com.github.phantomthief.model.builder.metrics.BuildMetricsListener;
+import com.google.common.collect.MapMaker;
+
+/**
+ * Commits Java Flight Recorder events of builds, rounds, value builder calls and lazy namespace
+ * materializations, they are enabled and configured by JFR settings as other events.
+ *
+ * It requires a JDK with JFR (8u262+ or 11+).
+ *
+ * <pre>{@code
+ * modelBuilder.metricsListener(new JfrBuildMetricsListener());
+ * }</pre>
+ *
+ * @author w.vela
+ */
+public class JfrBuildMetricsListener implements BuildMetricsListener {
+
+    // events in progress by build context (by identity)
+    private final ConcurrentMap<BuildContext, BuildEvent> builds = new MapMaker().weakKeys().makeMap();
+    private final ConcurrentMap<BuildContext, RoundEvent> rounds = new MapMaker().weakKeys().makeMap();
+
+    @Override
+    public void onBuildStart(BuildContext buildContext) {
+        BuildEvent event = new BuildEvent();
+        if (event.isEnabled()) {
+            event.begin();
+            builds.put(buildContext, event);
+        }
+    }
+
+    @Override
+    public void onBuildEnd(BuildContext buildContext, int rounds, long costNanos, Throwable error) {
+        BuildEvent event = builds.remove(buildContext);
+        if (event != null) {
+            event.end();
+            event.rounds = rounds;
+            event.error = error == null ? null : error.toString();
+            event.commit();
+        }
+    }
+
+    @Override
+    public void onRoundStart(BuildContext buildContext, int round, int objectCount) {
+        RoundEvent event = new RoundEvent();
+        if (event.isEnabled()) {
+            event.round = round;
+            event.objectCount = objectCount;
+            event.begin();
+            rounds.put(buildContext, event);
+        }
+    }
+
+    @Override
+    public void onRoundEnd(BuildContext buildContext, int round, long costNanos) {
+        RoundEvent event = rounds.remove(buildContext);
+        if (event != null) {
+            event.end();
+            event.commit();
+        }
+    }
+
+    @Override
+    public void onValueBuildEnd(BuildContext buildContext, Object valueNamespace, int batchSize, int hitCount,
+            long costNanos, Throwable error) {
+        ValueBuildEvent event = new ValueBuildEvent();
+        if (event.isEnabled()) {
+            event.namespace = String.valueOf(valueNamespace);
+            event.batchSize = batchSize;
+            event.resultSize = hitCount;
+            event.cost = costNanos;
+            event.error = error == null ? null : error.toString();
+            event.commit();
+        }
+    }
+
+    @Override
+    public void onLazyBuild(BuildContext buildContext, Object namespace, int size, long costNanos) {
+        LazyBuildEvent event = new LazyBuildEvent();
+        if (event.isEnabled()) {
+            event.namespace = String.valueOf(namespace);
+            event.resultSize = size;
+            event.cost = costNanos;
+            event.commit();
+        }
+    }
+}
@@ -0,0 +1,28 @@
+package com.github.phantomthief.model.builder.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+/**
+ * @author w.vela
+ */
+@Name("com.github.phantomthief.model.builder.LazyBuild")
+@Label("Lazy Namespace Materialization")
+@Category("Model View Builder")
+@Description("A lazy namespace is built on its first access, committed when it ends.")
+final class LazyBuildEvent extends Event {
+
+    @Label("Namespace")
+    String namespace;
+
+    @Label("Result Size")
+    int resultSize;
+
+    @Label("Cost")
+    @Timespan(Timespan.NANOSECONDS)
+    long cost;
+}
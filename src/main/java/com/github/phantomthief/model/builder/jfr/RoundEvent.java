@@ -0,0 +1,25 @@
+package com.github.phantomthief.model.builder.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * @author w.vela
+ */
+@Name("com.github.phantomthief.model.builder.Round")
+@Label("Model Build Round")
+@Category("Model View Builder")
+@Description("A round of build. It includes the value builders of the round if the build is round by round.")
+@StackTrace(false)
+final class RoundEvent extends Event {
+
+    @Label("Round")
+    int round;
+
+    @Label("Object Count")
+    int objectCount;
+}
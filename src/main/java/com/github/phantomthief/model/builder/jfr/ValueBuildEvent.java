@@ -0,0 +1,39 @@
+package com.github.phantomthief.model.builder.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * the event is committed when the value builder call ends, which may be another thread than the one starts it.
+ * so it has no duration, see the cost field instead.
+ *
+ * @author w.vela
+ */
+@Name("com.github.phantomthief.model.builder.ValueBuild")
+@Label("Value Builder Call")
+@Category("Model View Builder")
+@Description("A call of value builder, committed when it ends.")
+@StackTrace(false)
+final class ValueBuildEvent extends Event {
+
+    @Label("Value Namespace")
+    String namespace;
+
+    @Label("Batch Size")
+    int batchSize;
+
+    @Label("Result Size")
+    int resultSize;
+
+    @Label("Cost")
+    @Timespan(Timespan.NANOSECONDS)
+    long cost;
+
+    @Label("Error")
+    String error;
+}
@@ -0,0 +1,79 @@
+package com.github.phantomthief.model.builder.metrics;
+
+import com.github.phantomthief.model.builder.context.BuildContext;
+
+/**
+ * Receives the events of builds, registered by
+ * {@link com.github.phantomthief.model.builder.impl.SimpleModelBuilder#metricsListener}.
+ *
+ * All methods do nothing by default. Without any listener, a build doesn't even read the clock for metrics.
+ * Callbacks may be called concurrently by builds (and by value builders of a build running on an executor),
+ * so they should be cheap, thread safe and never throw.
+ *
+ * A round is one pass of extracting ids and values from the objects built so far. In round by round builds,
+ * it includes calling the value builders of the extracted ids. With an executor or in
+ * {@link com.github.phantomthief.model.builder.ModelBuilder#buildMultiAsync}, value builders are dispatched
+ * without waiting, so a round only covers the extraction.
+ *
+ * @author w.vela
+ */
+public interface BuildMetricsListener {
+
+    default void onBuildStart(BuildContext buildContext) {
+    }
+
+    /**
+     * @param error null if the build succeeded
+     */
+    default void onBuildEnd(BuildContext buildContext, int rounds, long costNanos, Throwable error) {
+    }
+
+    /**
+     * @param round starts from 1
+     * @param objectCount objects to extract ids and values from in the round
+     */
+    default void onRoundStart(BuildContext buildContext, int round, int objectCount) {
+    }
+
+    /**
+     * ids and values are extracted from all objects of the round, it's called before {@link #onRoundEnd}.
+     */
+    default void onExtractEnd(BuildContext buildContext, int round, long costNanos) {
+    }
+
+    default void onRoundEnd(BuildContext buildContext, int round, long costNanos) {
+    }
+
+    /**
+     * ids of an id namespace are filtered before calling a value builder, the ones already in build context
+     * (or in building) are skipped. the value builder is not called if nothing is left.
+     *
+     * @param extractedCount ids extracted in the round
+     * @param toBuildCount ids left to build
+     */
+    default void onIdsFiltered(BuildContext buildContext, Object idNamespace, Object valueNamespace,
+            int extractedCount, int toBuildCount) {
+    }
+
+    /**
+     * @param batchSize ids passed to the value builder, ids of cached namespaces are counted before looking up
+     * the cache.
+     */
+    default void onValueBuildStart(BuildContext buildContext, Object valueNamespace, int batchSize) {
+    }
+
+    /**
+     * @param hitCount ids which got a value
+     * @param costNanos including the time waiting for the executor, if any
+     * @param error null if the value builder succeeded
+     */
+    default void onValueBuildEnd(BuildContext buildContext, Object valueNamespace, int batchSize, int hitCount,
+            long costNanos, Throwable error) {
+    }
+
+    /**
+     * a lazy namespace is materialized, which happens at most once per build context.
+     */
+    default void onLazyBuild(BuildContext buildContext, Object namespace, int size, long costNanos) {
+    }
+}
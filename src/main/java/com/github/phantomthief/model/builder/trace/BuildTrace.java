@@ -0,0 +1,409 @@
+package com.github.phantomthief.model.builder.trace;
+
+import static java.util.Collections.unmodifiableList;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The spans recorded by {@link BuildTracer} for one build context, see
+ * {@link com.github.phantomthief.model.builder.context.impl.SimpleBuildContext#trace()}.
+ *
+ * Spans are recorded flat, the tree is resolved by time: a round belongs to the latest build started before it,
+ * and an extraction or a value builder call belongs to the latest round started before it. Lazy namespaces
+ * materialized by views after the build are appended to the build as well.
+ *
+ * @author w.vela
+ */
+public final class BuildTrace {
+
+    public enum SpanType {
+        BUILD, ROUND, EXTRACT, VALUE_BUILD, LAZY_BUILD
+    }
+
+    // all times of spans are relative to it
+    private final long originNanos = System.nanoTime();
+    private final List<Span> spans = new ArrayList<>();
+
+    public BuildTrace() {
+    }
+
+    synchronized void start(SpanType type, int round, int countIn) {
+        spans.add(new Span(type, null, round, System.nanoTime() - originNanos, -1, countIn, 0, null));
+    }
+
+    /**
+     * end the latest open span of given type and round.
+     *
+     * @param countIn replaces the one given on start if it's not negative
+     */
+    synchronized void end(SpanType type, int round, int countIn, Throwable error) {
+        for (int i = spans.size() - 1; i >= 0; i--) {
+            Span span = spans.get(i);
+            if (span.type == type && span.round == round && span.costNanos < 0) {
+                span.costNanos = System.nanoTime() - originNanos - span.startNanos;
+                if (countIn >= 0) {
+                    span.countIn = countIn;
+                }
+                span.error = error == null ? null : error.toString();
+                return;
+            }
+        }
+    }
+
+    /**
+     * add a span ends now.
+     */
+    synchronized void add(SpanType type, Object namespace, int round, long costNanos, int countIn, int countOut,
+            Throwable error) {
+        long startNanos = System.nanoTime() - originNanos - costNanos;
+        spans.add(new Span(type, namespace, round, startNanos, costNanos, countIn, countOut,
+                error == null ? null : error.toString()));
+    }
+
+    /**
+     * @return a snapshot of all spans, in the order they are recorded.
+     */
+    public synchronized List<Span> getSpans() {
+        List<Span> result = new ArrayList<>(spans.size());
+        for (Span span : spans) {
+            result.add(span.copy());
+        }
+        return unmodifiableList(result);
+    }
+
+    /**
+     * @return the spans of the latest build on its critical path, in time order.
+     * it's found backward from the extraction or value builder call which ends last, by picking the one ends
+     * latest before the current one starts, which it's likely waiting for.
+     */
+    public List<Span> getCriticalPath() {
+        return criticalPath(getSpans());
+    }
+
+    private static List<Span> criticalPath(List<Span> spans) {
+        Span build = null;
+        for (Span span : spans) {
+            if (span.type == SpanType.BUILD) {
+                build = span;
+            }
+        }
+        if (build == null) {
+            return Collections.emptyList();
+        }
+        List<Span> candidates = new ArrayList<>();
+        for (Span span : spans) {
+            if ((span.type == SpanType.EXTRACT || span.type == SpanType.VALUE_BUILD) && span.costNanos >= 0
+                    && span.startNanos >= build.startNanos
+                    && (build.costNanos < 0 || span.getEndNanos() <= build.getEndNanos())) {
+                candidates.add(span);
+            }
+        }
+        List<Span> result = new ArrayList<>();
+        long before = Long.MAX_VALUE;
+        while (true) {
+            Span latest = null;
+            for (Span span : candidates) {
+                if (span.getEndNanos() <= before && (latest == null || span.getEndNanos() > latest.getEndNanos())) {
+                    latest = span;
+                }
+            }
+            if (latest == null) {
+                break;
+            }
+            result.add(latest);
+            candidates.remove(latest);
+            before = latest.startNanos;
+        }
+        Collections.reverse(result);
+        return result;
+    }
+
+    /**
+     * @return spans by their parent (null for top level), children are in time order.
+     */
+    private static Map<Span, List<Span>> tree(List<Span> spans) {
+        List<Span> sorted = new ArrayList<>(spans);
+        sorted.sort((a, b) -> Long.compare(a.startNanos, b.startNanos));
+        Map<Span, List<Span>> result = new IdentityHashMap<>();
+        Span build = null;
+        Span round = null;
+        for (Span span : sorted) {
+            Span parent;
+            switch (span.type) {
+                case BUILD:
+                    parent = null;
+                    build = span;
+                    round = null;
+                    break;
+                case ROUND:
+                case LAZY_BUILD:
+                    parent = build;
+                    if (span.type == SpanType.ROUND) {
+                        round = span;
+                    }
+                    break;
+                default:
+                    parent = round != null ? round : build;
+                    break;
+            }
+            result.computeIfAbsent(parent, it -> new ArrayList<>()).add(span);
+        }
+        return result;
+    }
+
+    /**
+     * @return a human readable tree of spans, the ones on critical path are marked by '*'.
+     */
+    public String toText() {
+        List<Span> spans = getSpans();
+        Map<Span, List<Span>> tree = tree(spans);
+        List<Span> criticalPath = criticalPath(spans);
+        Set<Span> critical = Collections.newSetFromMap(new IdentityHashMap<>());
+        critical.addAll(criticalPath);
+        StringBuilder sb = new StringBuilder();
+        appendText(sb, tree, critical, null, 0);
+        long criticalNanos = 0;
+        sb.append("critical path:");
+        for (Span span : criticalPath) {
+            sb.append(' ').append(span.getName());
+            criticalNanos += span.costNanos;
+        }
+        sb.append(", ").append(formatMillis(criticalNanos)).append('\n');
+        return sb.toString();
+    }
+
+    private static void appendText(StringBuilder sb, Map<Span, List<Span>> tree, Set<Span> critical, Span parent,
+            int depth) {
+        List<Span> children = tree.get(parent);
+        if (children == null) {
+            return;
+        }
+        for (Span span : children) {
+            for (int i = 0; i < depth; i++) {
+                sb.append("  ");
+            }
+            sb.append(critical.contains(span) ? "* " : "- ").append(span.getName()).append(' ')
+                    .append(span.costNanos < 0 ? "unfinished" : formatMillis(span.costNanos));
+            switch (span.type) {
+                case BUILD:
+                    sb.append(" rounds=").append(span.countIn);
+                    break;
+                case ROUND:
+                    sb.append(" objects=").append(span.countIn);
+                    break;
+                case EXTRACT:
+                    break;
+                case LAZY_BUILD:
+                    sb.append(" size=").append(span.countOut);
+                    break;
+                default:
+                    sb.append(" ids=").append(span.countIn).append(" hits=").append(span.countOut);
+                    break;
+            }
+            if (span.error != null) {
+                sb.append(" error=").append(span.error);
+            }
+            sb.append('\n');
+            appendText(sb, tree, critical, span, depth + 1);
+        }
+    }
+
+    private static String formatMillis(long nanos) {
+        return String.format("%.3fms", nanos / 1e6);
+    }
+
+    /**
+     * @return a json document of all spans, with the index of parent span, and times in microseconds.
+     */
+    public String toJson() {
+        List<Span> spans = getSpans();
+        Map<Span, List<Span>> tree = tree(spans);
+        Map<Span, Integer> indexes = new IdentityHashMap<>();
+        Map<Span, Span> parents = new IdentityHashMap<>();
+        for (int i = 0; i < spans.size(); i++) {
+            indexes.put(spans.get(i), i);
+        }
+        tree.forEach((parent, children) -> children.forEach(child -> parents.put(child, parent)));
+        Set<Span> critical = Collections.newSetFromMap(new IdentityHashMap<>());
+        critical.addAll(criticalPath(spans));
+
+        StringBuilder sb = new StringBuilder("{\"spans\":[");
+        for (int i = 0; i < spans.size(); i++) {
+            Span span = spans.get(i);
+            Span parent = parents.get(span);
+            if (i > 0) {
+                sb.append(',');
+            }
+            sb.append("{\"type\":\"").append(span.type).append('"');
+            if (span.namespace != null) {
+                sb.append(",\"namespace\":");
+                appendJsonString(sb, String.valueOf(span.namespace));
+            }
+            sb.append(",\"round\":").append(span.round)
+                    .append(",\"parent\":").append(parent == null ? -1 : indexes.get(parent))
+                    .append(",\"startMicros\":").append(NANOSECONDS.toMicros(span.startNanos))
+                    .append(",\"costMicros\":").append(NANOSECONDS.toMicros(span.costNanos))
+                    .append(",\"countIn\":").append(span.countIn)
+                    .append(",\"countOut\":").append(span.countOut)
+                    .append(",\"critical\":").append(critical.contains(span));
+            if (span.error != null) {
+                sb.append(",\"error\":");
+                appendJsonString(sb, span.error);
+            }
+            sb.append('}');
+        }
+        return sb.append("]}").toString();
+    }
+
+    private static void appendJsonString(StringBuilder sb, String value) {
+        sb.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"':
+                    sb.append("\\\"");
+                    break;
+                case '\\':
+                    sb.append("\\\\");
+                    break;
+                case '\n':
+                    sb.append("\\n");
+                    break;
+                case '\r':
+                    sb.append("\\r");
+                    break;
+                case '\t':
+                    sb.append("\\t");
+                    break;
+                default:
+                    if (c < 0x20) {
+                        sb.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        sb.append(c);
+                    }
+                    break;
+            }
+        }
+        sb.append('"');
+    }
+
+    @Override
+    public String toString() {
+        return toText();
+    }
+
+    /**
+     * A span of trace. the meaning of counts depends on its type:
+     * <ul>
+     * <li>{@link SpanType#BUILD}: countIn is the number of rounds</li>
+     * <li>{@link SpanType#ROUND}: countIn is the number of objects to extract</li>
+     * <li>{@link SpanType#VALUE_BUILD}: countIn is the number of ids requested, countOut is the number of values
+     * returned</li>
+     * <li>{@link SpanType#LAZY_BUILD}: countOut is the number of values built</li>
+     * </ul>
+     */
+    public static final class Span {
+
+        private final SpanType type;
+        private final Object namespace;
+        private final int round;
+        private final long startNanos;
+        private long costNanos;
+        private int countIn;
+        private final int countOut;
+        private String error;
+
+        private Span(SpanType type, Object namespace, int round, long startNanos, long costNanos, int countIn,
+                int countOut, String error) {
+            this.type = type;
+            this.namespace = namespace;
+            this.round = round;
+            this.startNanos = startNanos;
+            this.costNanos = costNanos;
+            this.countIn = countIn;
+            this.countOut = countOut;
+            this.error = error;
+        }
+
+        private Span copy() {
+            return new Span(type, namespace, round, startNanos, costNanos, countIn, countOut, error);
+        }
+
+        public SpanType getType() {
+            return type;
+        }
+
+        /**
+         * @return the value namespace of value builder call or lazy build, null for other spans.
+         */
+        public Object getNamespace() {
+            return namespace;
+        }
+
+        /**
+         * @return 0 for builds, value builder calls and lazy builds
+         */
+        public int getRound() {
+            return round;
+        }
+
+        /**
+         * @return nanos since the trace is created
+         */
+        public long getStartNanos() {
+            return startNanos;
+        }
+
+        /**
+         * @return -1 if the span is unfinished
+         */
+        public long getCostNanos() {
+            return costNanos;
+        }
+
+        long getEndNanos() {
+            return startNanos + costNanos;
+        }
+
+        public int getCountIn() {
+            return countIn;
+        }
+
+        public int getCountOut() {
+            return countOut;
+        }
+
+        /**
+         * @return the string of failure, or null
+         */
+        public String getError() {
+            return error;
+        }
+
+        public String getName() {
+            switch (type) {
+                case BUILD:
+                    return "build";
+                case ROUND:
+                    return "round#" + round;
+                case EXTRACT:
+                    return "extract#" + round;
+                case VALUE_BUILD:
+                    return "value[" + namespace + "]";
+                default:
+                    return "lazy[" + namespace + "]";
+            }
+        }
+
+        @Override
+        public String toString() {
+            return getName() + ":" + formatMillis(costNanos);
+        }
+    }
+}
@@ -0,0 +1,120 @@
+package com.github.phantomthief.model.builder.trace;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Consumer;
+
+import com.github.phantomthief.model.builder.context.BuildContext;
+import com.github.phantomthief.model.builder.context.impl.SimpleBuildContext;
+import com.github.phantomthief.model.builder.metrics.BuildMetricsListener;
+import com.github.phantomthief.model.builder.trace.BuildTrace.SpanType;
+
+/**
+ * Records a {@link BuildTrace} into sampled {@link SimpleBuildContext}s, and into the ones enabled by
+ * {@link SimpleBuildContext#enableTrace()}. Other build contexts are never traced.
+ *
+ * <pre>{@code
+ * modelBuilder.metricsListener(new BuildTracer(0.01, trace -> logger.info("build trace:\n{}", trace.toText())));
+ * }</pre>
+ *
+ * A build not traced costs a random number at start and a field read of each callback. Once a build context is
+ * traced, following builds of it are traced as well.
+ *
+ * @author w.vela
+ */
+public class BuildTracer implements BuildMetricsListener {
+
+    private final double sampleRate;
+    // nullable
+    private final Consumer<BuildTrace> onTraced;
+
+    public BuildTracer(double sampleRate) {
+        this(sampleRate, null);
+    }
+
+    /**
+     * @param onTraced called with the trace once a traced build ends, lazy namespaces materialized after that
+     * are not included yet.
+     */
+    public BuildTracer(double sampleRate, Consumer<BuildTrace> onTraced) {
+        checkArgument(sampleRate >= 0 && sampleRate <= 1, "sample rate should be in [0, 1].");
+        this.sampleRate = sampleRate;
+        this.onTraced = onTraced;
+    }
+
+    private static BuildTrace traceOf(BuildContext buildContext) {
+        if (buildContext instanceof SimpleBuildContext) {
+            return ((SimpleBuildContext) buildContext).trace();
+        }
+        return null;
+    }
+
+    @Override
+    public void onBuildStart(BuildContext buildContext) {
+        if (!(buildContext instanceof SimpleBuildContext)) {
+            return;
+        }
+        SimpleBuildContext simpleBuildContext = (SimpleBuildContext) buildContext;
+        if (simpleBuildContext.trace() == null && sampleRate > 0
+                && ThreadLocalRandom.current().nextDouble() < sampleRate) {
+            simpleBuildContext.enableTrace();
+        }
+        BuildTrace trace = simpleBuildContext.trace();
+        if (trace != null) {
+            trace.start(SpanType.BUILD, 0, 0);
+        }
+    }
+
+    @Override
+    public void onBuildEnd(BuildContext buildContext, int rounds, long costNanos, Throwable error) {
+        BuildTrace trace = traceOf(buildContext);
+        if (trace != null) {
+            trace.end(SpanType.BUILD, 0, rounds, error);
+            if (onTraced != null) {
+                onTraced.accept(trace);
+            }
+        }
+    }
+
+    @Override
+    public void onRoundStart(BuildContext buildContext, int round, int objectCount) {
+        BuildTrace trace = traceOf(buildContext);
+        if (trace != null) {
+            trace.start(SpanType.ROUND, round, objectCount);
+        }
+    }
+
+    @Override
+    public void onExtractEnd(BuildContext buildContext, int round, long costNanos) {
+        BuildTrace trace = traceOf(buildContext);
+        if (trace != null) {
+            trace.add(SpanType.EXTRACT, null, round, costNanos, 0, 0, null);
+        }
+    }
+
+    @Override
+    public void onRoundEnd(BuildContext buildContext, int round, long costNanos) {
+        BuildTrace trace = traceOf(buildContext);
+        if (trace != null) {
+            trace.end(SpanType.ROUND, round, -1, null);
+        }
+    }
+
+    @Override
+    public void onValueBuildEnd(BuildContext buildContext, Object valueNamespace, int batchSize, int hitCount,
+            long costNanos, Throwable error) {
+        BuildTrace trace = traceOf(buildContext);
+        if (trace != null) {
+            trace.add(SpanType.VALUE_BUILD, valueNamespace, 0, costNanos, batchSize, hitCount, error);
+        }
+    }
+
+    @Override
+    public void onLazyBuild(BuildContext buildContext, Object namespace, int size, long costNanos) {
+        BuildTrace trace = traceOf(buildContext);
+        if (trace != null) {
+            trace.add(SpanType.LAZY_BUILD, namespace, 0, costNanos, 0, size, null);
+        }
+    }
+}
@@ -0,0 +1,287 @@
+package com.github.phantomthief.model.builder.util;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A map from primitive long to value by open addressing with linear probing, used as the data of long id
+ * namespaces, so looking up by {@link #get(long)} and {@link #containsKey(long)} never boxes.
+ *
+ * The {@link Map} methods accept any {@link Long}, {@link Integer}, {@link Short} or {@link Byte} as key.
+ * Like {@link java.util.concurrent.ConcurrentHashMap}, null value is not allowed.
+ *
+ * Writes are synchronized, reads are lock free and safe with concurrent writes: a slot is published by a volatile
+ * write of its value after its key, and the key of a used slot never changes. {@link #remove(long)} replaces the
+ * value by a tombstone, which is only reused by the same key, and tombstones are dropped when the table is rehashed
+ * into a new one. Reads and iterations are weakly consistent with concurrent writes.
+ *
+ * @author w.vela
+ */
+public final class LongHashMap<V> extends AbstractMap<Long, V> {
+
+    // the value of a removed slot, probing goes on over it
+    private static final Object TOMBSTONE = new Object();
+
+    // a slot is used iff its value is not null.
+    private volatile Table table;
+    private volatile int size;
+    // guarded by this
+    private int tombstones;
+
+    public LongHashMap() {
+        this(8);
+    }
+
+    public LongHashMap(int expectedSize) {
+        this.table = new Table(tableSizeFor(expectedSize));
+    }
+
+    static int tableSizeFor(int expectedSize) {
+        int capacity = 8;
+        while (capacity >> 1 < expectedSize) {
+            capacity <<= 1;
+        }
+        return capacity;
+    }
+
+    static int mix(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    @SuppressWarnings("unchecked")
+    public V get(long key) {
+        Table t = table;
+        int mask = t.keys.length - 1;
+        int slot = mix(key) & mask;
+        Object value;
+        while ((value = t.values.get(slot)) != null) {
+            if (t.keys[slot] == key) {
+                return value == TOMBSTONE ? null : (V) value;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return null;
+    }
+
+    public V getOrDefault(long key, V defaultValue) {
+        V value = get(key);
+        return value != null ? value : defaultValue;
+    }
+
+    public boolean containsKey(long key) {
+        return get(key) != null;
+    }
+
+    @SuppressWarnings("unchecked")
+    public synchronized V put(long key, V value) {
+        checkNotNull(value);
+        Table t = table;
+        int mask = t.keys.length - 1;
+        int slot = mix(key) & mask;
+        Object old;
+        while ((old = t.values.get(slot)) != null) {
+            if (t.keys[slot] == key) {
+                t.values.set(slot, value);
+                if (old == TOMBSTONE) {
+                    tombstones--;
+                    size++;
+                    return null;
+                }
+                return (V) old;
+            }
+            slot = (slot + 1) & mask;
+        }
+        t.keys[slot] = key;
+        // publishes the key as well
+        t.values.set(slot, value);
+        if (++size + tombstones > t.keys.length >> 1) {
+            // grows by tombstones too, so a table full of tombstones is rehashed at most once per
+            // O(size) writes.
+            table = t.resize(tableSizeFor(size + (size >> 1)));
+            tombstones = 0;
+        }
+        return null;
+    }
+
+    @SuppressWarnings("unchecked")
+    public synchronized V remove(long key) {
+        Table t = table;
+        int mask = t.keys.length - 1;
+        int slot = mix(key) & mask;
+        Object old;
+        while ((old = t.values.get(slot)) != null) {
+            if (t.keys[slot] == key) {
+                if (old == TOMBSTONE) {
+                    return null;
+                }
+                // the key is kept, so a concurrent reader never sees the value with another key
+                t.values.set(slot, TOMBSTONE);
+                size--;
+                tombstones++;
+                return (V) old;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return null;
+    }
+
+    @Override
+    public V get(Object key) {
+        return isKey(key) ? get(((Number) key).longValue()) : null;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return isKey(key) && containsKey(((Number) key).longValue());
+    }
+
+    @Override
+    public V put(Long key, V value) {
+        return put(key.longValue(), value);
+    }
+
+    @Override
+    public V remove(Object key) {
+        return isKey(key) ? remove(((Number) key).longValue()) : null;
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public void putAll(Map<? extends Long, ? extends V> m) {
+        if (m instanceof LongHashMap) {
+            Table t = ((LongHashMap<V>) m).table;
+            synchronized (this) {
+                for (int i = 0; i < t.keys.length; i++) {
+                    Object value = t.values.get(i);
+                    if (value != null && value != TOMBSTONE) {
+                        put(t.keys[i], (V) value);
+                    }
+                }
+            }
+        } else {
+            synchronized (this) {
+                // keys may be any integral number by raw type usage.
+                for (Entry<?, ? extends V> entry : m.entrySet()) {
+                    put(((Number) entry.getKey()).longValue(), entry.getValue());
+                }
+            }
+        }
+    }
+
+    @Override
+    public synchronized void clear() {
+        table = new Table(8);
+        size = 0;
+        tombstones = 0;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    private static boolean isValue(Object slotValue) {
+        return slotValue != null && slotValue != TOMBSTONE;
+    }
+
+    private static boolean isKey(Object key) {
+        return key instanceof Long || key instanceof Integer || key instanceof Short || key instanceof Byte;
+    }
+
+    @Override
+    public Set<Entry<Long, V>> entrySet() {
+        return new AbstractSet<Entry<Long, V>>() {
+
+            @Override
+            public Iterator<Entry<Long, V>> iterator() {
+                Table t = table;
+                return new Iterator<Entry<Long, V>>() {
+
+                    private int next = -1;
+                    // read once by advancing, so it's never a tombstone written after the check
+                    private Object nextValue;
+
+                    {
+                        advance();
+                    }
+
+                    private void advance() {
+                        while (++next < t.keys.length) {
+                            nextValue = t.values.get(next);
+                            if (isValue(nextValue)) {
+                                return;
+                            }
+                        }
+                        nextValue = null;
+                    }
+
+                    @Override
+                    public boolean hasNext() {
+                        return next < t.keys.length;
+                    }
+
+                    @SuppressWarnings("unchecked")
+                    @Override
+                    public Entry<Long, V> next() {
+                        if (!hasNext()) {
+                            throw new NoSuchElementException();
+                        }
+                        Entry<Long, V> entry = new SimpleImmutableEntry<>(t.keys[next], (V) nextValue);
+                        advance();
+                        return entry;
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return size;
+            }
+        };
+    }
+
+    private static final class Table {
+
+        private final long[] keys;
+        // slots are read and written with volatile semantics.
+        private final AtomicReferenceArray<Object> values;
+
+        private Table(int capacity) {
+            this.keys = new long[capacity];
+            this.values = new AtomicReferenceArray<>(capacity);
+        }
+
+        /**
+         * @return a new table of given capacity with the entries of this, without tombstones.
+         */
+        private Table resize(int capacity) {
+            Table result = new Table(capacity);
+            int mask = capacity - 1;
+            for (int i = 0; i < keys.length; i++) {
+                Object value = values.get(i);
+                if (isValue(value)) {
+                    int slot = mix(keys[i]) & mask;
+                    while (result.values.get(slot) != null) {
+                        slot = (slot + 1) & mask;
+                    }
+                    result.keys[slot] = keys[i];
+                    result.values.set(slot, value);
+                }
+            }
+            return result;
+        }
+    }
+}
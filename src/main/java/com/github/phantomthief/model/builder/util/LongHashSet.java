@@ -0,0 +1,176 @@
+package com.github.phantomthief.model.builder.util;
+
+import static com.github.phantomthief.model.builder.util.LongHashMap.mix;
+import static com.github.phantomthief.model.builder.util.LongHashMap.tableSizeFor;
+
+import java.util.Arrays;
+import java.util.function.LongConsumer;
+
+/**
+ * A set of primitive long by open addressing with linear probing, it's not thread safe.
+ *
+ * @author w.vela
+ */
+public final class LongHashSet {
+
+    // 0 marks a free slot, so the 0 itself is kept out of the table.
+    private long[] keys;
+    private boolean containsZero;
+    private int size;
+
+    public LongHashSet() {
+        this(8);
+    }
+
+    public LongHashSet(int expectedSize) {
+        this.keys = new long[tableSizeFor(expectedSize)];
+    }
+
+    public boolean add(long key) {
+        if (key == 0) {
+            if (containsZero) {
+                return false;
+            }
+            containsZero = true;
+            size++;
+            return true;
+        }
+        int mask = keys.length - 1;
+        int slot = mix(key) & mask;
+        while (keys[slot] != 0) {
+            if (keys[slot] == key) {
+                return false;
+            }
+            slot = (slot + 1) & mask;
+        }
+        keys[slot] = key;
+        if (++size > keys.length >> 1) {
+            rehash(keys.length << 1);
+        }
+        return true;
+    }
+
+    public void addAll(long[] keys) {
+        for (long key : keys) {
+            add(key);
+        }
+    }
+
+    public boolean contains(long key) {
+        if (key == 0) {
+            return containsZero;
+        }
+        int mask = keys.length - 1;
+        int slot = mix(key) & mask;
+        while (keys[slot] != 0) {
+            if (keys[slot] == key) {
+                return true;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return false;
+    }
+
+    public boolean remove(long key) {
+        if (key == 0) {
+            if (!containsZero) {
+                return false;
+            }
+            containsZero = false;
+            size--;
+            return true;
+        }
+        int mask = keys.length - 1;
+        int slot = mix(key) & mask;
+        while (keys[slot] != 0) {
+            if (keys[slot] == key) {
+                shiftKeys(slot);
+                size--;
+                return true;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return false;
+    }
+
+    public void removeAll(long[] keys) {
+        for (long key : keys) {
+            remove(key);
+        }
+    }
+
+    // backward shift deletion, keeps all probing sequences unbroken without tombstone.
+    private void shiftKeys(int slot) {
+        int mask = keys.length - 1;
+        int last = slot;
+        slot = (slot + 1) & mask;
+        while (keys[slot] != 0) {
+            int ideal = mix(keys[slot]) & mask;
+            if (last <= slot ? last >= ideal || ideal > slot : last >= ideal && ideal > slot) {
+                keys[last] = keys[slot];
+                last = slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+        keys[last] = 0;
+    }
+
+    private void rehash(int newCapacity) {
+        long[] oldKeys = keys;
+        keys = new long[newCapacity];
+        int mask = newCapacity - 1;
+        for (long key : oldKeys) {
+            if (key != 0) {
+                int slot = mix(key) & mask;
+                while (keys[slot] != 0) {
+                    slot = (slot + 1) & mask;
+                }
+                keys[slot] = key;
+            }
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public void clear() {
+        Arrays.fill(keys, 0);
+        containsZero = false;
+        size = 0;
+    }
+
+    public void forEach(LongConsumer action) {
+        if (containsZero) {
+            action.accept(0);
+        }
+        for (long key : keys) {
+            if (key != 0) {
+                action.accept(key);
+            }
+        }
+    }
+
+    public long[] toArray() {
+        long[] result = new long[size];
+        int i = 0;
+        if (containsZero) {
+            result[i++] = 0;
+        }
+        for (long key : keys) {
+            if (key != 0) {
+                result[i++] = key;
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return Arrays.toString(toArray());
+    }
+}
@@ -0,0 +1,53 @@
+package com.github.phantomthief.model.builder.util;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.function.Function;
+
+/**
+ * Resolves a value for each class once and caches it by {@link ClassValue}, so a lookup is a field read
+ * on the class.
+ *
+ * A cached value is referenced by the class it's resolved for, not by this dispatcher: it's kept while the class
+ * is loaded, or until this dispatcher is unreachable, then it's dropped lazily by later lookups on the class.
+ * So anything a value captures stays reachable that long. If it reaches this dispatcher (e.g. a view mapper
+ * lambda capturing the view mapper owning this dispatcher), the dispatcher and all its values are kept until the
+ * class is unloaded, which never happens to classes of the application class loader. Values dropped by
+ * {@link #invalidate} are kept the same way.
+ *
+ * @author w.vela
+ */
+public final class TypeDispatcher<T> {
+
+    private final Function<Class<?>, T> resolver;
+    private volatile ClassValue<T> cache;
+
+    /**
+     * @param resolver resolves the value of a class, null is cached as well.
+     */
+    public TypeDispatcher(Function<Class<?>, T> resolver) {
+        this.resolver = checkNotNull(resolver);
+        this.cache = newCache();
+    }
+
+    public T get(Class<?> type) {
+        return cache.get(type);
+    }
+
+    /**
+     * drops all resolved values, should be called after anything the resolver depends on changed.
+     */
+    public void invalidate() {
+        cache = newCache();
+    }
+
+    private ClassValue<T> newCache() {
+        return new ClassValue<T>() {
+
+            @Override
+            protected T computeValue(Class<?> type) {
+                return resolver.apply(type);
+            }
+        };
+    }
+}
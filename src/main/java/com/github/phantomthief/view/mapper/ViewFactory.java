@@ -0,0 +1,22 @@
+package com.github.phantomthief.view.mapper;
+
+import static java.lang.annotation.ElementType.CONSTRUCTOR;
+import static java.lang.annotation.ElementType.METHOD;
+import static java.lang.annotation.RetentionPolicy.RUNTIME;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.Retention;
+import java.lang.annotation.Target;
+
+/**
+ * Marks a public constructor or a public static method of a view class as the factory of the view, found by
+ * {@link ViewScanner}. its parameters are (model) or (model, buildContext).
+ * Constructors not marked (e.g. copy constructors) are never factories.
+ *
+ * @author w.vela
+ */
+@Documented
+@Retention(RUNTIME)
+@Target({ CONSTRUCTOR, METHOD })
+public @interface ViewFactory {
+}
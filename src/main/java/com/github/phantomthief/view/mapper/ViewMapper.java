@@ -13,7 +13,19 @@ public interface ViewMapper {
     <M, V, B> V map(M model, B buildContext);
 
     default <M, V, B> List<V> map(Collection<M> models, B buildContext) {
-        return models.stream().map(i -> this.<M, V, B> map(i, buildContext)).collect(toList());
+        return mapAll(models, buildContext, this);
+    }
+
+    /**
+     * the strategy to map a collection: map each model by given itemMapper, results are in the order of models.
+     * it's sequential in caller thread by default, see
+     * {@link com.github.phantomthief.view.mapper.impl.ParallelViewMapper}.
+     *
+     * @param itemMapper the outermost mapper, so models are mapped as by {@link #map(Collection, Object)}
+     * of it, no matter which mapper in a forwarding chain decides the strategy.
+     */
+    default <M, V, B> List<V> mapAll(Collection<M> models, B buildContext, ViewMapper itemMapper) {
+        return models.stream().map(i -> itemMapper.<M, V, B> map(i, buildContext)).collect(toList());
     }
 
 }
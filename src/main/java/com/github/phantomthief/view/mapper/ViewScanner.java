@@ -0,0 +1,240 @@
+package com.github.phantomthief.view.mapper;
+
+import static com.google.common.base.Throwables.throwIfUnchecked;
+import static java.lang.invoke.MethodType.methodType;
+import static java.lang.reflect.Modifier.isAbstract;
+import static java.lang.reflect.Modifier.isPublic;
+import static java.lang.reflect.Modifier.isStatic;
+import static java.util.Collections.unmodifiableList;
+import static java.util.Collections.unmodifiableMap;
+import static org.slf4j.LoggerFactory.getLogger;
+
+import java.io.IOException;
+import java.lang.invoke.LambdaMetafactory;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodHandles.Lookup;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Executable;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+
+import org.slf4j.Logger;
+
+import com.github.phantomthief.model.builder.context.BuildContext;
+import com.github.phantomthief.view.mapper.impl.DefaultViewMapperImpl;
+import com.google.common.reflect.ClassPath;
+import com.google.common.reflect.ClassPath.ClassInfo;
+
+/**
+ * Finds view classes and their factories: public constructors and public static methods annotated by
+ * {@link ViewFactory}, with parameters (model, buildContext) or (model). A factory with build context is
+ * preferred to the one without, other factories of the same model type are rejected, in a view or across views.
+ *
+ * Factories are bound by {@link LambdaMetafactory} into real {@link BiFunction}s, so a view is created by a
+ * direct call, without reflection. Views not visible to the class loader of this class (e.g. loaded by a child
+ * class loader) are bound by {@link MethodHandle}s instead.
+ *
+ * Scanning class path is slow, the names of view classes found can be saved by {@link #getViewClassNames()},
+ * and loaded by {@link #of(Iterable, ClassLoader)} on next startup.
+ *
+ * <pre>{@code
+ * ViewMapper viewMapper = ViewScanner.scan("com.github.phantomthief.view").toViewMapper();
+ * }</pre>
+ *
+ * @author w.vela
+ */
+public final class ViewScanner {
+
+    private static final Logger logger = getLogger(ViewScanner.class);
+
+    private static final Lookup LOOKUP = MethodHandles.lookup();
+    private static final MethodType BI_FUNCTION_APPLY = methodType(Object.class, Object.class, Object.class);
+    private static final MethodType FUNCTION_APPLY = methodType(Object.class, Object.class);
+
+    private final List<String> viewClassNames = new ArrayList<>();
+    // modelType=>(model, buildContext)->view
+    private final Map<Class<?>, BiFunction<Object, BuildContext, Object>> factories = new LinkedHashMap<>();
+    // modelType=>view type of the factory, for error messages
+    private final Map<Class<?>, Class<?>> viewTypes = new HashMap<>();
+
+    private ViewScanner(Iterable<Class<?>> types) {
+        List<Class<?>> sorted = new ArrayList<>();
+        types.forEach(sorted::add);
+        sorted.sort(Comparator.comparing(Class::getName));
+        for (Class<?> type : sorted) {
+            if (isPublic(type.getModifiers()) && !type.isInterface() && !isAbstract(type.getModifiers())
+                    && addFactories(type)) {
+                viewClassNames.add(type.getName());
+            }
+        }
+    }
+
+    /**
+     * scan top level classes in given package and its sub packages, by the class loader of this class.
+     */
+    public static ViewScanner scan(String packageName) throws IOException {
+        return scan(packageName, ViewScanner.class.getClassLoader());
+    }
+
+    public static ViewScanner scan(String packageName, ClassLoader classLoader) throws IOException {
+        List<Class<?>> types = new ArrayList<>();
+        for (ClassInfo classInfo : ClassPath.from(classLoader).getTopLevelClassesRecursive(packageName)) {
+            types.add(classInfo.load());
+        }
+        return new ViewScanner(types);
+    }
+
+    /**
+     * load views by names saved from {@link #getViewClassNames()}, without scanning class path.
+     */
+    public static ViewScanner of(Iterable<String> viewClassNames, ClassLoader classLoader) {
+        List<Class<?>> types = new ArrayList<>();
+        for (String viewClassName : viewClassNames) {
+            try {
+                types.add(Class.forName(viewClassName, true, classLoader));
+            } catch (ClassNotFoundException e) {
+                throw new IllegalArgumentException("view class not found:" + viewClassName, e);
+            }
+        }
+        return new ViewScanner(types);
+    }
+
+    public static ViewScanner ofTypes(Iterable<Class<?>> viewTypes) {
+        return new ViewScanner(viewTypes);
+    }
+
+    /**
+     * @return names of view classes with any factory, in name order.
+     */
+    public List<String> getViewClassNames() {
+        return unmodifiableList(viewClassNames);
+    }
+
+    /**
+     * @return view factories by model type.
+     */
+    public Map<Class<?>, BiFunction<Object, BuildContext, Object>> getFactories() {
+        return unmodifiableMap(factories);
+    }
+
+    public DefaultViewMapperImpl toViewMapper() {
+        return registerTo(new DefaultViewMapperImpl());
+    }
+
+    public DefaultViewMapperImpl registerTo(DefaultViewMapperImpl viewMapper) {
+        factories.forEach(viewMapper::addViewFactory);
+        return viewMapper;
+    }
+
+    /**
+     * @return if any factory of given type is found
+     */
+    private boolean addFactories(Class<?> type) {
+        // modelType=>factory, the ones with build context are put later, so they win
+        Map<Class<?>, Executable> found = new LinkedHashMap<>();
+        List<Executable> candidates = new ArrayList<>();
+        for (Constructor<?> constructor : type.getConstructors()) {
+            if (constructor.isAnnotationPresent(ViewFactory.class)) {
+                candidates.add(constructor);
+            }
+        }
+        for (Method method : type.getMethods()) {
+            if (method.isAnnotationPresent(ViewFactory.class)) {
+                if (!isStatic(method.getModifiers()) || method.getReturnType() == void.class) {
+                    throw new IllegalArgumentException("invalid view factory:" + method);
+                }
+                candidates.add(method);
+            }
+        }
+        candidates.sort(Comparator.comparingInt(Executable::getParameterCount));
+        for (Executable candidate : candidates) {
+            Class<?>[] parameterTypes = candidate.getParameterTypes();
+            if (parameterTypes.length == 1
+                    || parameterTypes.length == 2 && BuildContext.class.isAssignableFrom(parameterTypes[1])) {
+                Executable existing = found.put(parameterTypes[0], candidate);
+                if (existing != null && existing.getParameterCount() == parameterTypes.length) {
+                    throw new IllegalArgumentException("duplicate view factories for model "
+                            + parameterTypes[0].getName() + ":" + existing + ", " + candidate);
+                }
+            } else {
+                throw new IllegalArgumentException("invalid view factory:" + candidate);
+            }
+        }
+        found.forEach((modelType, factory) -> {
+            if (factories.containsKey(modelType)) {
+                throw new IllegalArgumentException("duplicate view factories for model " + modelType.getName()
+                        + ":" + factory + ", and the one of " + viewTypes.get(modelType).getName());
+            }
+            logger.info("register view factory [{}] for model [{}].", factory, modelType.getName());
+            factories.put(modelType, bind(type, factory));
+            viewTypes.put(modelType, type);
+        });
+        return !found.isEmpty();
+    }
+
+    @SuppressWarnings("unchecked")
+    private static BiFunction<Object, BuildContext, Object> bind(Class<?> type, Executable factory) {
+        MethodHandle handle;
+        try {
+            handle = factory instanceof Constructor
+                    ? LOOKUP.unreflectConstructor((Constructor<?>) factory)
+                    : LOOKUP.unreflect((Method) factory);
+        } catch (IllegalAccessException e) {
+            throw new IllegalArgumentException(e);
+        }
+        boolean withBuildContext = factory.getParameterCount() == 2;
+        if (isVisible(type)) {
+            try {
+                if (withBuildContext) {
+                    return (BiFunction<Object, BuildContext, Object>) LambdaMetafactory.metafactory(LOOKUP, "apply",
+                            methodType(BiFunction.class), BI_FUNCTION_APPLY, handle, handle.type())
+                            .getTarget().invoke();
+                } else {
+                    Function<Object, Object> function = (Function<Object, Object>) LambdaMetafactory.metafactory(
+                            LOOKUP, "apply", methodType(Function.class), FUNCTION_APPLY, handle, handle.type())
+                            .getTarget().invoke();
+                    return (model, buildContext) -> function.apply(model);
+                }
+            } catch (Throwable e) {
+                logger.warn("fail to bind view factory [{}] by lambda, use method handle instead.", factory, e);
+            }
+        }
+        MethodHandle generic = handle.asType(withBuildContext ? BI_FUNCTION_APPLY : FUNCTION_APPLY);
+        if (withBuildContext) {
+            return (model, buildContext) -> {
+                try {
+                    return (Object) generic.invokeExact(model, (Object) buildContext);
+                } catch (Throwable e) {
+                    throwIfUnchecked(e);
+                    throw new IllegalStateException(e);
+                }
+            };
+        } else {
+            return (model, buildContext) -> {
+                try {
+                    return (Object) generic.invokeExact(model);
+                } catch (Throwable e) {
+                    throwIfUnchecked(e);
+                    throw new IllegalStateException(e);
+                }
+            };
+        }
+    }
+
+    private static boolean isVisible(Class<?> type) {
+        try {
+            return Class.forName(type.getName(), false, ViewScanner.class.getClassLoader()) == type;
+        } catch (ClassNotFoundException | LinkageError e) {
+            return false;
+        }
+    }
+}
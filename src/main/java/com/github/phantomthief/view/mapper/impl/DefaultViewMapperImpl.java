@@ -1,15 +1,17 @@
 package com.github.phantomthief.view.mapper.impl;
 
+import static com.github.phantomthief.view.mapper.impl.MapperDispatch.MISSING;
+import static com.github.phantomthief.view.mapper.impl.MapperDispatch.warnMissing;
 import static org.apache.commons.lang3.ClassUtils.getAllInterfaces;
 import static org.apache.commons.lang3.ClassUtils.getAllSuperclasses;
 
 import java.util.HashMap;
 import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.BiFunction;
 
 import com.github.phantomthief.model.builder.context.BuildContext;
+import com.github.phantomthief.model.builder.util.TypeDispatcher;
 import com.github.phantomthief.view.mapper.ViewMapper;
 
 /**
@@ -22,39 +24,56 @@ public class DefaultViewMapperImpl implements ViewMapper {
 
     private final org.slf4j.Logger logger = org.slf4j.LoggerFactory.getLogger(getClass());
 
-    private final Map<Class<?>, BiFunction<?, ?, ?>> mappers = new HashMap<>();
-    private final ConcurrentMap<Class<?>, BiFunction<?, ?, ?>> modelTypeCache = new ConcurrentHashMap<>();
+    // modelType=>(model, buildContext)->view
+    private final Map<Class<?>, BiFunction<Object, Object, Object>> mappers = new HashMap<>();
+    private final TypeDispatcher<BiFunction<Object, Object, Object>> modelTypeCache =
+            new TypeDispatcher<>(this::resolveMapping);
+    // changed with mappers, for the tables folded by OverrideViewMapper
+    private final AtomicLong version = new AtomicLong();
 
     /** {@inheritDoc} */
     @SuppressWarnings({ "unchecked" })
     @Override
     public <M, V, B> V map(M model, B buildContext) {
-        return (V) getMapper(model.getClass()).apply(buildContext, model);
+        return (V) getMapping(model.getClass()).apply(model, buildContext);
     }
 
-    @SuppressWarnings("rawtypes")
-    private BiFunction getMapper(Class<?> modelType) {
-        return modelTypeCache.computeIfAbsent(modelType, t -> {
-            BiFunction<?, ?, ?> result = mappers.get(t);
-            if (result == null) {
-                for (Class<?> c : getAllInterfaces(t)) {
-                    result = mappers.get(c);
-                    if (result != null) {
-                        return result;
-                    }
-                }
-                for (Class<?> c : getAllSuperclasses(t)) {
-                    result = mappers.get(c);
-                    if (result != null) {
-                        return result;
-                    }
+    /**
+     * @return {@link MapperDispatch#MISSING} if there is no mapper of the type.
+     */
+    BiFunction<Object, Object, Object> getMapping(Class<?> modelType) {
+        return modelTypeCache.get(modelType);
+    }
+
+    long version() {
+        return version.get();
+    }
+
+    private BiFunction<Object, Object, Object> resolveMapping(Class<?> modelType) {
+        BiFunction<Object, Object, Object> mapper = findMapper(modelType);
+        return mapper != null ? mapper : MISSING;
+    }
+
+    private BiFunction<Object, Object, Object> findMapper(Class<?> modelType) {
+        BiFunction<Object, Object, Object> result = mappers.get(modelType);
+        if (result == null) {
+            for (Class<?> c : getAllInterfaces(modelType)) {
+                result = mappers.get(c);
+                if (result != null) {
+                    return result;
                 }
             }
-            if (result == null) {
-                logger.warn("cannot found model's view:{}", modelType);
+            for (Class<?> c : getAllSuperclasses(modelType)) {
+                result = mappers.get(c);
+                if (result != null) {
+                    return result;
+                }
             }
-            return result;
-        });
+        }
+        if (result == null) {
+            warnMissing(logger, modelType);
+        }
+        return result;
     }
 
     /**
@@ -66,9 +85,26 @@ public class DefaultViewMapperImpl implements ViewMapper {
      * @param <V> a V object.
      * @return a {@link com.github.phantomthief.view.mapper.impl.DefaultViewMapperImpl} object.
      */
+    @SuppressWarnings({ "rawtypes", "unchecked" })
     public <M, V> DefaultViewMapperImpl addMapper(Class<M> modelType,
             BiFunction<BuildContext, M, V> viewFactory) {
-        mappers.put(modelType, viewFactory);
+        return putMapper(modelType, (model, buildContext) -> ((BiFunction) viewFactory).apply(buildContext, model));
+    }
+
+    /**
+     * same as {@link #addMapper}, but the view factory takes the model first, as the constructor of a view
+     * usually does. it's called directly on mapping, without an adapter to swap arguments.
+     */
+    @SuppressWarnings({ "rawtypes", "unchecked" })
+    public <M, V> DefaultViewMapperImpl addViewFactory(Class<M> modelType,
+            BiFunction<? super M, BuildContext, ? extends V> viewFactory) {
+        return putMapper(modelType, (BiFunction) viewFactory);
+    }
+
+    private DefaultViewMapperImpl putMapper(Class<?> modelType, BiFunction<Object, Object, Object> mapper) {
+        mappers.put(modelType, mapper);
+        modelTypeCache.invalidate();
+        version.incrementAndGet();
         return this;
     }
 
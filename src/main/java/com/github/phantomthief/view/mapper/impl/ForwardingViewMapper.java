@@ -1,5 +1,8 @@
 package com.github.phantomthief.view.mapper.impl;
 
+import java.util.Collection;
+import java.util.List;
+
 import com.github.phantomthief.view.mapper.ViewMapper;
 
 /**
@@ -35,4 +38,12 @@ public abstract class ForwardingViewMapper implements ViewMapper {
         return delegate.map(model, buildContext);
     }
 
+    /**
+     * the delegate decides how a collection is mapped (e.g. in parallel), models are still mapped by this.
+     */
+    @Override
+    public <M, V, B> List<V> mapAll(Collection<M> models, B buildContext, ViewMapper itemMapper) {
+        return delegate.mapAll(models, buildContext, itemMapper);
+    }
+
 }
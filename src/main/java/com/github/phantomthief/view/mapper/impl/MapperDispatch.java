@@ -0,0 +1,40 @@
+package com.github.phantomthief.view.mapper.impl;
+
+import java.util.function.BiFunction;
+
+import org.slf4j.Logger;
+
+import com.google.common.util.concurrent.RateLimiter;
+
+/**
+ * Dispatch entries of view mappers in this package, they are functions of (model, buildContext).
+ * An {@link OverrideViewMapper} folds the entries of the mappers it wraps into its own, so a model is mapped by
+ * one lookup no matter how many layers there are.
+ *
+ * Each mapper has a version of its own mappers, a folded table is tagged by the sum of versions along the chain,
+ * and it's dropped once any of them changes. Mappers are expected to be changed only on setup.
+ *
+ * @author w.vela
+ */
+final class MapperDispatch {
+
+    /**
+     * the explicit entry of a model type without mapper, so it's cached as other entries.
+     */
+    static final BiFunction<Object, Object, Object> MISSING = (model, buildContext) -> {
+        throw new NullPointerException("cannot found model's view:" + model.getClass());
+    };
+
+    // warnings of missing mappers are rate limited, for mappers changed frequently
+    private static final RateLimiter WARN_LIMITER = RateLimiter.create(1);
+
+    private MapperDispatch() {
+        throw new UnsupportedOperationException();
+    }
+
+    static void warnMissing(Logger logger, Class<?> modelType) {
+        if (WARN_LIMITER.tryAcquire()) {
+            logger.warn("cannot found model's view:{}", modelType);
+        }
+    }
+}
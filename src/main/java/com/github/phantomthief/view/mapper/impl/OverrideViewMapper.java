@@ -2,66 +2,117 @@ package com.github.phantomthief.view.mapper.impl;
 
 import java.util.HashMap;
 import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.BiFunction;
 
 import org.apache.commons.lang3.ClassUtils;
 
+import com.github.phantomthief.model.builder.util.TypeDispatcher;
 import com.github.phantomthief.view.mapper.ViewMapper;
 
 /**
+ * Overrides mappers of some model types. Mappers of a chain of {@link OverrideViewMapper}s over a
+ * {@link DefaultViewMapperImpl} are folded into one dispatch table, so a model is mapped by one lookup.
+ * Subclasses of them in the chain are not folded but called by {@link #map}, as they may override it.
+ *
  * @author w.vela
  */
 public class OverrideViewMapper extends ForwardingViewMapper {
 
+    private final ViewMapper delegate;
     private final Map<Class<?>, BiFunction<?, ?, ?>> overrideMappers = new HashMap<>();
-    private final ConcurrentMap<Class<?>, BiFunction<?, ?, ?>> modelTypeCache = new ConcurrentHashMap<>();
+    // changed with overrideMappers
+    private final AtomicLong version = new AtomicLong();
+    private volatile Folded folded;
 
     public OverrideViewMapper(ViewMapper delegate) {
         super(delegate);
+        this.delegate = delegate;
+        this.folded = new Folded(foldedVersion(), new TypeDispatcher<>(this::resolveMapping));
     }
 
     public <E, B, V> OverrideViewMapper addMapper(Class<E> type, BiFunction<E, B, V> mapper) {
         overrideMappers.put(type, mapper);
+        version.incrementAndGet();
         return this;
     }
 
-    @SuppressWarnings({ "rawtypes", "unchecked" })
+    @SuppressWarnings("unchecked")
     @Override
     public <M, V, B> V map(M model, B buildContext) {
-        BiFunction mapper = getMapper(model.getClass());
-        if (mapper != null) {
-            return (V) mapper.apply(model, buildContext);
-        } else {
-            return super.map(model, buildContext);
+        return (V) getMapping(model.getClass()).apply(model, buildContext);
+    }
+
+    /**
+     * the table is replaced with its version in one step, a lookup still resolving on the former table
+     * only caches its result there.
+     */
+    BiFunction<Object, Object, Object> getMapping(Class<?> modelType) {
+        long current = foldedVersion();
+        Folded table = folded;
+        if (table.version != current) {
+            table = new Folded(current, new TypeDispatcher<>(this::resolveMapping));
+            folded = table;
         }
+        return table.mappings.get(modelType);
     }
 
-    @SuppressWarnings("rawtypes")
-    private BiFunction getMapper(Class<?> modelType) {
-        BiFunction<?, ?, ?> biFunction = modelTypeCache.get(modelType);
-        if (biFunction != null) {
-            return biFunction;
+    /**
+     * @return the sum of versions of this mapper and the mappers folded into it.
+     */
+    long foldedVersion() {
+        long result = version.get();
+        if (delegate.getClass() == OverrideViewMapper.class) {
+            result += ((OverrideViewMapper) delegate).foldedVersion();
+        } else if (delegate.getClass() == DefaultViewMapperImpl.class) {
+            result += ((DefaultViewMapperImpl) delegate).version();
+        }
+        return result;
+    }
+
+    @SuppressWarnings("unchecked")
+    private BiFunction<Object, Object, Object> resolveMapping(Class<?> modelType) {
+        BiFunction<?, ?, ?> mapper = findMapper(modelType);
+        if (mapper != null) {
+            return (BiFunction<Object, Object, Object>) mapper;
+        }
+        // only exact classes, a subclass may override map()
+        if (delegate.getClass() == OverrideViewMapper.class) {
+            return ((OverrideViewMapper) delegate).getMapping(modelType);
+        }
+        if (delegate.getClass() == DefaultViewMapperImpl.class) {
+            return ((DefaultViewMapperImpl) delegate).getMapping(modelType);
         }
-        return modelTypeCache.computeIfAbsent(modelType, t -> {
-            BiFunction<?, ?, ?> result = overrideMappers.get(t);
-            if (result == null) {
-                for (Class<?> c : ClassUtils.getAllInterfaces(t)) {
-                    result = overrideMappers.get(c);
-                    if (result != null) {
-                        return result;
-                    }
+        return delegate::map;
+    }
+
+    private BiFunction<?, ?, ?> findMapper(Class<?> modelType) {
+        BiFunction<?, ?, ?> result = overrideMappers.get(modelType);
+        if (result == null) {
+            for (Class<?> c : ClassUtils.getAllInterfaces(modelType)) {
+                result = overrideMappers.get(c);
+                if (result != null) {
+                    return result;
                 }
-                for (Class<?> c : ClassUtils.getAllSuperclasses(t)) {
-                    result = overrideMappers.get(c);
-                    if (result != null) {
-                        return result;
-                    }
+            }
+            for (Class<?> c : ClassUtils.getAllSuperclasses(modelType)) {
+                result = overrideMappers.get(c);
+                if (result != null) {
+                    return result;
                 }
             }
-            return result;
-        });
+        }
+        return result;
     }
 
+    private static final class Folded {
+
+        private final long version;
+        private final TypeDispatcher<BiFunction<Object, Object, Object>> mappings;
+
+        private Folded(long version, TypeDispatcher<BiFunction<Object, Object, Object>> mappings) {
+            this.version = version;
+            this.mappings = mappings;
+        }
+    }
 }
@@ -0,0 +1,131 @@
+package com.github.phantomthief.view.mapper.impl;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Throwables.throwIfUnchecked;
+import static java.util.Arrays.asList;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RejectedExecutionException;
+
+import com.github.phantomthief.view.mapper.ViewMapper;
+
+/**
+ * Maps collections of at least threshold models in parallel: models are split into chunks, which are mapped on
+ * given executor except the last one, which is mapped in caller thread (so are chunks rejected by the executor).
+ * Results are in the order of models.
+ *
+ * If any model fails, all chunks are waited, then the failure of the first failed model is thrown.
+ * Collections mapped inside a chunk (e.g. nested views) are mapped sequentially, so a bounded executor is never
+ * waited by its own threads.
+ *
+ * Views can read lazy namespaces of {@link com.github.phantomthief.model.builder.context.impl.SimpleBuildContext}
+ * concurrently, each of them is still built once.
+ *
+ * @author w.vela
+ */
+public class ParallelViewMapper extends ForwardingViewMapper {
+
+    private static final ThreadLocal<Boolean> IN_CHUNK = new ThreadLocal<>();
+
+    private final Executor executor;
+    private final int parallelism;
+    private final int threshold;
+
+    /**
+     * @param parallelism max number of chunks, including the one mapped in caller thread
+     * @param threshold min number of models to map in parallel
+     */
+    public ParallelViewMapper(ViewMapper delegate, Executor executor, int parallelism, int threshold) {
+        super(delegate);
+        checkArgument(parallelism > 0);
+        checkArgument(threshold > 0);
+        this.executor = checkNotNull(executor);
+        this.parallelism = parallelism;
+        this.threshold = threshold;
+    }
+
+    public ParallelViewMapper(ViewMapper delegate, ForkJoinPool pool, int threshold) {
+        this(delegate, pool, pool.getParallelism() + 1, threshold);
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public <M, V, B> List<V> mapAll(Collection<M> models, B buildContext, ViewMapper itemMapper) {
+        int size = models.size();
+        if (size < threshold || parallelism == 1 || IN_CHUNK.get() != null) {
+            return super.mapAll(models, buildContext, itemMapper);
+        }
+        Object[] array = models.toArray();
+        Object[] results = new Object[size];
+        int chunks = Math.min(parallelism, size);
+        int chunkSize = (size + chunks - 1) / chunks;
+
+        List<CompletableFuture<Void>> futures = new ArrayList<>(chunks);
+        int from = 0;
+        for (; from + chunkSize < size; from += chunkSize) {
+            int start = from;
+            Runnable chunk = () -> mapChunk(array, results, start, start + chunkSize, buildContext, itemMapper);
+            CompletableFuture<Void> future;
+            try {
+                future = CompletableFuture.runAsync(chunk, executor);
+            } catch (RejectedExecutionException e) {
+                future = new CompletableFuture<>();
+                try {
+                    chunk.run();
+                    future.complete(null);
+                } catch (Throwable t) {
+                    future.completeExceptionally(t);
+                }
+            }
+            futures.add(future);
+        }
+        Throwable error = null;
+        try {
+            mapChunk(array, results, from, size, buildContext, itemMapper);
+        } catch (Throwable e) {
+            error = e;
+        }
+        // earlier chunks fail first
+        Throwable firstError = null;
+        for (CompletableFuture<Void> future : futures) {
+            try {
+                future.join();
+            } catch (CompletionException e) {
+                if (firstError == null) {
+                    firstError = e.getCause() != null ? e.getCause() : e;
+                }
+            }
+        }
+        if (firstError == null) {
+            firstError = error;
+        }
+        if (firstError != null) {
+            throwIfUnchecked(firstError);
+            throw new CompletionException(firstError);
+        }
+        return (List<V>) new ArrayList<>(asList(results));
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <M, B> void mapChunk(Object[] models, Object[] results, int from, int to, B buildContext,
+            ViewMapper itemMapper) {
+        Boolean inChunk = IN_CHUNK.get();
+        IN_CHUNK.set(true);
+        try {
+            for (int i = from; i < to; i++) {
+                results[i] = itemMapper.map((M) models[i], buildContext);
+            }
+        } finally {
+            if (inChunk == null) {
+                IN_CHUNK.remove();
+            }
+        }
+    }
+}
@@ -0,0 +1,52 @@
+package com.github.phantomthief.view.mapper.jfr;
+
+import java.util.Collection;
+import java.util.List;
+
+import jdk.jfr.EventType;
+
+import com.github.phantomthief.view.mapper.ViewMapper;
+import com.github.phantomthief.view.mapper.impl.ForwardingViewMapper;
+
+/**
+ * Records each batch of {@link #map(Collection, Object)} as a Java Flight Recorder event, it's enabled and
+ * configured by JFR settings as other events. Models are mapped by the delegate as they are without this.
+ * It should be the outermost mapper, a forwarding mapper around it maps batches by {@link #mapAll} only.
+ *
+ * It requires a JDK with JFR (8u262+ or 11+).
+ *
+ * <pre>{@code
+ * ViewMapper viewMapper = new JfrViewMapper(new DefaultViewMapperImpl().addMapper(...));
+ * }</pre>
+ *
+ * @author w.vela
+ */
+public class JfrViewMapper extends ForwardingViewMapper {
+
+    // cached, so the check before each batch allocates nothing
+    private static final EventType TYPE = EventType.getEventType(ViewMapEvent.class);
+
+    private final Class<?> delegateType;
+
+    public JfrViewMapper(ViewMapper delegate) {
+        super(delegate);
+        this.delegateType = delegate.getClass();
+    }
+
+    @Override
+    public <M, V, B> List<V> map(Collection<M> models, B buildContext) {
+        if (!TYPE.isEnabled()) {
+            return super.map(models, buildContext);
+        }
+        ViewMapEvent event = new ViewMapEvent();
+        event.begin();
+        List<V> result = super.map(models, buildContext);
+        event.end();
+        if (event.shouldCommit()) {
+            event.mapper = delegateType;
+            event.modelCount = models.size();
+            event.commit();
+        }
+        return result;
+    }
+}
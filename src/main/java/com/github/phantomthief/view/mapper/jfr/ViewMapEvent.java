@@ -0,0 +1,25 @@
+package com.github.phantomthief.view.mapper.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * @author w.vela
+ */
+@Name("com.github.phantomthief.view.mapper.ViewMap")
+@Label("View Mapping")
+@Category("Model View Builder")
+@Description("A batch of models mapped to views.")
+@StackTrace(false)
+final class ViewMapEvent extends Event {
+
+    @Label("View Mapper")
+    Class<?> mapper;
+
+    @Label("Model Count")
+    int modelCount;
+}
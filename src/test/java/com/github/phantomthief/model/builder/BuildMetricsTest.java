@@ -0,0 +1,120 @@
+package com.github.phantomthief.model.builder;
+
+import static java.util.Collections.singletonList;
+import static java.util.stream.Collectors.toList;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.slf4j.LoggerFactory.getLogger;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+
+import com.github.phantomthief.model.builder.context.BuildContext;
+import com.github.phantomthief.model.builder.impl.SimpleModelBuilder;
+import com.github.phantomthief.model.builder.metrics.BuildMetricsListener;
+import com.github.phantomthief.model.builder.model.Post;
+import com.github.phantomthief.model.builder.model.User;
+import com.github.phantomthief.model.builder.trace.BuildTrace;
+import com.github.phantomthief.model.builder.trace.BuildTrace.Span;
+import com.github.phantomthief.model.builder.trace.BuildTrace.SpanType;
+import com.github.phantomthief.model.builder.trace.BuildTracer;
+import com.google.common.collect.Maps;
+
+/**
+ * @author w.vela
+ */
+class BuildMetricsTest {
+
+    private static final Logger logger = getLogger(BuildMetricsTest.class);
+
+    private final TestDAO testDAO = new TestDAO();
+
+    @Test
+    void testMetricsListener() {
+        Map<Object, Integer> batchSizes = new HashMap<>();
+        Map<Object, Integer> lazyBuilds = new HashMap<>();
+        List<Integer> builds = new ArrayList<>();
+        BuildMetricsListener listener = new BuildMetricsListener() {
+
+            @Override
+            public void onBuildEnd(BuildContext buildContext, int rounds, long costNanos, Throwable error) {
+                builds.add(rounds);
+            }
+
+            @Override
+            public void onValueBuildEnd(BuildContext buildContext, Object valueNamespace, int batchSize,
+                    int hitCount, long costNanos, Throwable error) {
+                batchSizes.merge(valueNamespace, batchSize, Integer::sum);
+            }
+
+            @Override
+            public void onLazyBuild(BuildContext buildContext, Object namespace, int size, long costNanos) {
+                lazyBuilds.merge(namespace, 1, Integer::sum);
+            }
+        };
+        SimpleModelBuilder<TestBuildContext> measuredBuilder = new SimpleModelBuilder<TestBuildContext>()
+                .extractId(Post.class, Post::getUserId, User.class)
+                .buildValue(User.class, testDAO::getUsers)
+                .lazyBuild(User.class, (Collection<Integer> ids) -> Maps.toMap(ids, id -> true), "isFans")
+                .metricsListener(listener);
+
+        Collection<Post> posts = testDAO.getPosts(Arrays.asList(1L, 2L, 3L)).values();
+        TestBuildContext buildContext = new TestBuildContext(1);
+        measuredBuilder.buildMulti(posts, buildContext);
+        buildContext.getData("isFans");
+        buildContext.getData("isFans");
+        int userCount = buildContext.getData(User.class).size();
+        assertEquals(singletonList(2), builds);
+        assertEquals(userCount, (int) batchSizes.get(User.class));
+        assertEquals(1, (int) lazyBuilds.get("isFans"));
+
+        measuredBuilder.buildMultiAsync(posts, new TestBuildContext(1)).join();
+        assertEquals(2, builds.size());
+        assertEquals(userCount * 2, (int) batchSizes.get(User.class));
+    }
+
+    @Test
+    void testBuildTrace() {
+        List<BuildTrace> traced = new ArrayList<>();
+        SimpleModelBuilder<TestBuildContext> tracedBuilder = new SimpleModelBuilder<TestBuildContext>()
+                .extractId(Post.class, Post::getUserId, User.class)
+                .buildValue(User.class, testDAO::getUsers)
+                .lazyBuild(User.class, (Collection<Integer> ids) -> Maps.toMap(ids, id -> true), "isFans")
+                .metricsListener(new BuildTracer(0, traced::add));
+
+        Collection<Post> posts = testDAO.getPosts(Arrays.asList(1L, 2L, 3L)).values();
+        TestBuildContext unsampled = new TestBuildContext(1);
+        tracedBuilder.buildMulti(posts, unsampled);
+        assertNull(unsampled.trace());
+
+        TestBuildContext buildContext = new TestBuildContext(1);
+        buildContext.enableTrace();
+        tracedBuilder.buildMulti(posts, buildContext);
+        buildContext.getData("isFans");
+        BuildTrace trace = buildContext.trace();
+        assertEquals(singletonList(trace), traced);
+        // not a bean property of the build context
+        buildContext.markDegraded("isFollowing");
+        assertFalse(buildContext.toString().contains("trace"));
+        assertFalse(buildContext.toString().contains("isFollowing"));
+        List<SpanType> types = trace.getSpans().stream().map(Span::getType).collect(toList());
+        assertEquals(Arrays.asList(SpanType.BUILD, SpanType.ROUND, SpanType.EXTRACT, SpanType.VALUE_BUILD,
+                SpanType.ROUND, SpanType.EXTRACT, SpanType.LAZY_BUILD), types);
+        List<Span> criticalPath = trace.getCriticalPath();
+        assertEquals(Arrays.asList(SpanType.EXTRACT, SpanType.VALUE_BUILD, SpanType.EXTRACT),
+                criticalPath.stream().map(Span::getType).collect(toList()));
+        assertEquals(User.class, criticalPath.get(1).getNamespace());
+        logger.info("trace:\n{}", trace.toText());
+        assertTrue(trace.toText().contains("* value[" + User.class + "]"));
+        assertTrue(trace.toJson().startsWith("{\"spans\":[{\"type\":\"BUILD\""));
+    }
+}
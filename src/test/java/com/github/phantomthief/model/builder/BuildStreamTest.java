@@ -0,0 +1,164 @@
+package com.github.phantomthief.model.builder;
+
+import static java.util.concurrent.TimeUnit.MINUTES;
+import static java.util.function.Function.identity;
+import static java.util.stream.Collectors.toList;
+import static java.util.stream.Collectors.toMap;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+import com.github.phantomthief.model.builder.impl.SimpleModelBuilder;
+import com.github.phantomthief.model.builder.model.Post;
+import com.github.phantomthief.model.builder.model.User;
+import com.google.common.collect.Iterators;
+import com.google.common.collect.Maps;
+
+/**
+ * @author w.vela
+ */
+class BuildStreamTest {
+
+    private final TestDAO testDAO = new TestDAO();
+
+    @Test
+    void testBuildStream() throws Exception {
+        AtomicInteger read = new AtomicInteger();
+        List<Integer> readOnWindows = new ArrayList<>();
+        List<List<Post>> windows = new ArrayList<>();
+        SimpleModelBuilder<TestBuildContext> streamBuilder = new SimpleModelBuilder<TestBuildContext>()
+                .extractId(Post.class, Post::getUserId, User.class)
+                .buildValue(User.class, testDAO::getUsers);
+        TestBuildContext buildContext = new TestBuildContext(1);
+        Iterator<Post> sources = Iterators.transform(
+                testDAO.getPosts(Arrays.asList(1L, 2L, 3L)).values().iterator(), post -> {
+                    read.incrementAndGet();
+                    return post;
+                });
+        streamBuilder.buildStream(sources, 2, buildContext, window -> {
+            readOnWindows.add(read.get());
+            windows.add(window);
+            window.forEach(post -> assertNotNull(buildContext.getData(User.class).get(post.getUserId())));
+        });
+        assertEquals(Arrays.asList(2, 3), readOnWindows);
+        assertEquals(Arrays.asList(2, 1), windows.stream().map(List::size).collect(toList()));
+
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            SimpleModelBuilder<TestBuildContext> asyncBuilder = new SimpleModelBuilder<TestBuildContext>()
+                    .extractId(Post.class, Post::getUserId, User.class)
+                    .buildValue(User.class, testDAO::getUsers)
+                    .withExecutor(executor);
+            TestBuildContext asyncContext = new TestBuildContext(1);
+            List<Post> consumed = new CopyOnWriteArrayList<>();
+            assertSame(asyncContext, asyncBuilder.buildStreamAsync(
+                    testDAO.getPosts(Arrays.asList(1L, 2L, 3L)).values().iterator(), 1, asyncContext, window -> {
+                        window.forEach(post -> assertNotNull(
+                                asyncContext.getData(User.class).get(post.getUserId())));
+                        consumed.addAll(window);
+                    }).get(1, MINUTES));
+            assertEquals(3, consumed.size());
+
+            CompletableFuture<TestBuildContext> failed = asyncBuilder.buildStreamAsync(
+                    testDAO.getPosts(Arrays.asList(1L, 2L, 3L)).values().iterator(), 1, new TestBuildContext(1),
+                    window -> {
+                        throw new IllegalArgumentException();
+                    });
+            ExecutionException e = assertThrows(ExecutionException.class, () -> failed.get(1, MINUTES));
+            assertTrue(e.getCause() instanceof IllegalArgumentException);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void testBuildStreamWithLazy() throws Exception {
+        SimpleModelBuilder<TestBuildContext> lazyBuilder = new SimpleModelBuilder<TestBuildContext>()
+                .extractId(Post.class, Post::getUserId, User.class)
+                .buildValue(User.class, testDAO::getUsers)
+                .lazyBuild(User.class, (Collection<Integer> ids) -> Maps.toMap(ids, id -> true), "isFans")
+                .prefetchLazy("isFans");
+        // users of posts: 1, 1, 2
+        List<Post> posts = new ArrayList<>(testDAO.getPosts(Arrays.asList(1L, 2L, 3L)).values());
+        posts.sort((a, b) -> Long.compare(a.getId(), b.getId()));
+
+        TestBuildContext buildContext = new TestBuildContext(1);
+        List<Post> consumed = new ArrayList<>();
+        lazyBuilder.buildStream(posts.iterator(), 1, buildContext, window -> window.forEach(post -> {
+            assertNotNull(buildContext.getData("isFans").get(post.getUserId()));
+            consumed.add(post);
+        }));
+        assertEquals(posts, consumed);
+
+        TestBuildContext asyncContext = new TestBuildContext(1);
+        List<Post> asyncConsumed = new CopyOnWriteArrayList<>();
+        lazyBuilder.buildStreamAsync(posts.iterator(), 1, asyncContext, window -> window.forEach(post -> {
+            assertNotNull(asyncContext.getData("isFans").get(post.getUserId()));
+            asyncConsumed.add(post);
+        })).get(1, MINUTES);
+        assertEquals(posts, asyncConsumed);
+    }
+
+    @Test
+    void testBuildWindows() {
+        List<Integer> built = new ArrayList<>();
+        SimpleModelBuilder<TestBuildContext> windowBuilder = new SimpleModelBuilder<TestBuildContext>()
+                .extractId(Post.class, Post::getUserId, User.class)
+                .buildValue(User.class, (Collection<Integer> ids) -> {
+                    built.addAll(ids);
+                    return testDAO.getUsers(ids);
+                });
+        // users of posts: 1, 1, 2
+        List<Post> posts = new ArrayList<>(testDAO.getPosts(Arrays.asList(1L, 2L, 3L)).values());
+        posts.sort((a, b) -> Long.compare(a.getId(), b.getId()));
+
+        Set<TestBuildContext> contexts = new HashSet<>();
+        windowBuilder.buildWindows(posts.iterator(), 1, () -> new TestBuildContext(1), 0, (window, context) -> {
+            assertTrue(contexts.add(context));
+            assertEquals(1, context.getData(User.class).size());
+        });
+        assertEquals(3, contexts.size());
+        assertEquals(Arrays.asList(1, 1, 2), built);
+
+        built.clear();
+        windowBuilder.buildWindows(posts.iterator(), 1, () -> new TestBuildContext(1), 1, (window, context) -> {
+            Post post = window.get(0);
+            assertNotNull(context.getData(User.class).get(post.getUserId()));
+        });
+        assertEquals(Arrays.asList(1, 2), built);
+
+        // carried values of a long id namespace are still looked up by any integral key.
+        List<Long> builtLongIds = new ArrayList<>();
+        SimpleModelBuilder<TestBuildContext> longIdBuilder = new SimpleModelBuilder<TestBuildContext>()
+                .extractLongId(Post.class, Post::getUserId, User.class)
+                .buildLongValue(User.class, (long[] ids) -> {
+                    Arrays.stream(ids).forEach(builtLongIds::add);
+                    return testDAO.getUsers(Arrays.stream(ids).mapToObj(id -> (int) id).collect(toList()))
+                            .values().stream().collect(toMap(user -> (long) user.getId(), identity()));
+                }, User.class);
+        longIdBuilder.buildWindows(posts.iterator(), 1, () -> new TestBuildContext(1), 1, (window, context) -> {
+            Post post = window.get(0);
+            assertNotNull(context.getData(User.class).get(post.getUserId()));
+            assertNotNull(context.getData(User.class, post.getUserId()));
+        });
+        assertEquals(Arrays.asList(1L, 2L), builtLongIds);
+    }
+}
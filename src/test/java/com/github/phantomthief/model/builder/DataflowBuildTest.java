@@ -0,0 +1,208 @@
+package com.github.phantomthief.model.builder;
+
+import static java.lang.Thread.State.BLOCKED;
+import static java.util.concurrent.CompletableFuture.completedFuture;
+import static java.util.concurrent.TimeUnit.MINUTES;
+import static java.util.function.Function.identity;
+import static java.util.stream.Collectors.toMap;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.jupiter.api.Test;
+
+import com.github.phantomthief.model.builder.context.BuildContext;
+import com.github.phantomthief.model.builder.impl.SimpleModelBuilder;
+import com.github.phantomthief.model.builder.model.Comment;
+import com.github.phantomthief.model.builder.model.HasUser;
+import com.github.phantomthief.model.builder.model.Post;
+import com.github.phantomthief.model.builder.model.User;
+
+/**
+ * @author w.vela
+ */
+class DataflowBuildTest {
+
+    private final TestDAO testDAO = new TestDAO();
+
+    @Test
+    void testBuildAsyncOffCompletingThread() {
+        ExecutorService eventLoop = Executors.newSingleThreadExecutor(
+                runnable -> new Thread(runnable, "event-loop"));
+        try {
+            List<String> syncBuilderThreads = new CopyOnWriteArrayList<>();
+            CompletableFuture<Map<Integer, User>> users = new CompletableFuture<>();
+            SimpleModelBuilder<TestBuildContext> asyncBuilder = new SimpleModelBuilder<TestBuildContext>()
+                    .extractId(Post.class, Post::getUserId, User.class)
+                    .buildValueAsync(User.class, (Collection<Integer> ids) -> users, User.class)
+                    .extractId(User.class, User::getId, "userId")
+                    .buildValueTo("userId", (Collection<Integer> ids) -> {
+                        syncBuilderThreads.add(Thread.currentThread().getName());
+                        return ids.stream().collect(toMap(identity(), id -> "user" + id));
+                    }, "userName");
+            Collection<Post> posts = testDAO.getPosts(Arrays.asList(1L, 2L, 3L)).values();
+            CompletableFuture<TestBuildContext> future = asyncBuilder.buildMultiAsync(posts,
+                    new TestBuildContext(1));
+            eventLoop.execute(() -> users.complete(testDAO.getUsers(Arrays.asList(1, 2, 3))));
+            TestBuildContext buildContext = future.join();
+            assertFalse(buildContext.getData("userName").isEmpty());
+            assertFalse(syncBuilderThreads.isEmpty());
+            // the synchronous builder of the next round doesn't run in the event loop
+            assertFalse(syncBuilderThreads.contains("event-loop"));
+        } finally {
+            eventLoop.shutdown();
+        }
+    }
+
+    @Test
+    void testDataflowBuildWithPlainContext() {
+        CompletableFuture<Map<Integer, User>> users = new CompletableFuture<>();
+        CompletableFuture<Map<Long, Comment>> comments = new CompletableFuture<>();
+        PlainBuildContext buildContext = new PlainBuildContext();
+        AtomicBoolean writtenWhileExtracting = new AtomicBoolean();
+        // each continuation of value builders runs on a new thread, so the test can tell where it's waiting
+        List<Thread> continuations = new CopyOnWriteArrayList<>();
+        Executor continuationExecutor = command -> {
+            Thread thread = new Thread(command);
+            continuations.add(thread);
+            thread.start();
+        };
+        SimpleModelBuilder<PlainBuildContext> plainBuilder = new SimpleModelBuilder<PlainBuildContext>()
+                .extractId(Post.class, Post::getUserId, User.class)
+                .extractId(Post.class, Post::getCommentIds, Comment.class)
+                .buildValueAsync(User.class, (Collection<Integer> ids) -> users, User.class)
+                .buildValueAsync(Comment.class, (Collection<Long> ids) -> comments, Comment.class)
+                .valueFromSelf(User.class, user -> {
+                    if (!comments.isDone()) {
+                        // comments completed while users are extracted are not written until the extraction ends,
+                        // their continuation either writes them or gets blocked by the build.
+                        CountDownLatch written = buildContext.onWrite = new CountDownLatch(1);
+                        comments.complete(testDAO.getComments(Arrays.asList(1L, 2L, 3L)));
+                        Thread continuation = continuations.get(continuations.size() - 1);
+                        while (written.getCount() > 0 && continuation.isAlive()
+                                && continuation.getState() != BLOCKED) {
+                            Thread.yield();
+                        }
+                        writtenWhileExtracting.set(written.getCount() == 0);
+                        buildContext.onWrite = null;
+                    }
+                    return user.getId();
+                })
+                .withExecutor(continuationExecutor);
+        Collection<Post> posts = testDAO.getPosts(Arrays.asList(1L, 2L, 3L)).values();
+        CompletableFuture<PlainBuildContext> future = plainBuilder.buildMultiAsync(posts, buildContext);
+        users.complete(testDAO.getUsers(Arrays.asList(1, 2, 3)));
+        future.join();
+        assertTrue(comments.isDone());
+        assertFalse(writtenWhileExtracting.get());
+        assertFalse(buildContext.getData(User.class).isEmpty());
+        assertFalse(buildContext.getData(Comment.class).isEmpty());
+    }
+
+    @Test
+    void testDataflowBuild() throws InterruptedException {
+        CompletableFuture<Map<Long, Integer>> slowCommentCount = new CompletableFuture<>();
+        CountDownLatch followingBuilt = new CountDownLatch(1);
+        SimpleModelBuilder<TestBuildContext> dataflowBuilder = new SimpleModelBuilder<TestBuildContext>()
+                .valueFromSelf(Post.class, Post::getId)
+                .valueFromSelf(User.class, User::getId)
+                .extractId(Post.class, Post::getUserId, User.class)
+                .extractId(User.class, User::getId, "followingUser")
+                .buildValueAsync(Post.class, (Collection<Long> ids) -> slowCommentCount, "commentCount")
+                .buildValueAsync(User.class,
+                        (Collection<Integer> ids) -> completedFuture(testDAO.getUsers(ids)), User.class)
+                .buildValueAsync("followingUser", (TestBuildContext context, Collection<Integer> ids) -> {
+                    followingBuilt.countDown();
+                    return completedFuture(testDAO.isFollowing(context.getVisitorId(), ids));
+                }, "isFollowing");
+
+        Collection<Post> posts = testDAO.getPosts(Arrays.asList(1L, 2L, 3L)).values();
+        CompletableFuture<TestBuildContext> future = dataflowBuilder.buildMultiAsync(posts,
+                new TestBuildContext(1));
+        // following status is built from the built users, it doesn't wait for the slow comment count of posts.
+        assertTrue(followingBuilt.await(1, MINUTES));
+        assertFalse(future.isDone());
+
+        slowCommentCount.complete(posts.stream().collect(toMap(Post::getId, post -> 0)));
+        TestBuildContext buildContext = future.join();
+        assertEquals(posts.size(), buildContext.getData("commentCount").size());
+        posts.forEach(post -> assertNotNull(buildContext.getData("isFollowing").get(post.getUserId())));
+    }
+
+    @Test
+    void testDataflowBuildWithMixedIdNamespaces() {
+        // a value namespace built from both a long id namespace and a boxed one
+        SimpleModelBuilder<TestBuildContext> mixedBuilder = new SimpleModelBuilder<TestBuildContext>()
+                .extractLongId(Post.class, Post::getUserId, "postUserId")
+                .extractId(Comment.class, Comment::getUserId, "commentUserId")
+                .buildLongValue("postUserId", (long[] ids) -> Arrays.stream(ids).boxed()
+                        .collect(toMap(identity(), id -> "user" + id)), "userName")
+                .buildValueTo("commentUserId", (Collection<Integer> ids) -> ids.stream()
+                        .collect(toMap(identity(), id -> "user" + id)), "userName");
+        List<Object> sources = new ArrayList<>(testDAO.getPosts(Arrays.asList(1L, 2L, 3L)).values());
+        sources.addAll(testDAO.getComments(Arrays.asList(1L, 2L, 3L)).values());
+
+        TestBuildContext buildContext = mixedBuilder.buildMultiAsync(sources, new TestBuildContext(1)).join();
+        for (Object source : sources) {
+            int userId = ((HasUser) source).getUserId();
+            assertEquals("user" + userId, buildContext.getData("userName", userId));
+        }
+    }
+
+    /**
+     * a build context of plain maps, which can't be read while it's written.
+     */
+    private static final class PlainBuildContext implements BuildContext {
+
+        private final Map<Object, Map<Object, Object>> datas = new HashMap<>();
+        private volatile CountDownLatch onWrite;
+
+        @SuppressWarnings("unchecked")
+        @Override
+        public <K, V> Map<K, V> getData(Object namespace) {
+            return (Map<K, V>) datas.computeIfAbsent(namespace, it -> new HashMap<Object, Object>() {
+
+                private static final long serialVersionUID = 1L;
+
+                @Override
+                public Object put(Object key, Object value) {
+                    onWrite();
+                    return super.put(key, value);
+                }
+
+                @Override
+                public void putAll(Map<?, ?> m) {
+                    onWrite();
+                    super.putAll(m);
+                }
+            });
+        }
+
+        private void onWrite() {
+            CountDownLatch latch = onWrite;
+            if (latch != null) {
+                latch.countDown();
+            }
+        }
+
+        @Override
+        public void merge(BuildContext buildContext) {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
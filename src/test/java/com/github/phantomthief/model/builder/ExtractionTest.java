@@ -0,0 +1,230 @@
+package com.github.phantomthief.model.builder;
+
+import static java.util.Collections.singletonList;
+import static java.util.function.Function.identity;
+import static java.util.stream.Collectors.toMap;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.jupiter.api.Test;
+
+import com.github.phantomthief.model.builder.extract.IdSink;
+import com.github.phantomthief.model.builder.impl.SimpleModelBuilder;
+import com.github.phantomthief.model.builder.model.Comment;
+import com.github.phantomthief.model.builder.model.CommentExtractors;
+import com.github.phantomthief.model.builder.model.Post;
+import com.github.phantomthief.model.builder.model.PostExtractors;
+import com.github.phantomthief.model.builder.model.User;
+import com.github.phantomthief.model.builder.util.LongHashMap;
+
+/**
+ * @author w.vela
+ */
+class ExtractionTest {
+
+    private final TestDAO testDAO = new TestDAO();
+
+    @Test
+    void testGeneratedExtractors() {
+        SimpleModelBuilder<TestBuildContext> generatedBuilder = PostExtractors.registerTo(
+                CommentExtractors.registerTo(new SimpleModelBuilder<TestBuildContext>()))
+                .buildValue(User.class, testDAO::getUsers)
+                .buildValue(Comment.class, testDAO::getComments);
+        SimpleModelBuilder<TestBuildContext> lambdaBuilder = new SimpleModelBuilder<TestBuildContext>()
+                .extractId(Post.class, Post::getUserId, User.class)
+                .extractId(Post.class, Post::getCommentIds, Comment.class)
+                .extractValue(Post.class, Post::comments, Comment::getId, Comment.class)
+                .extractId(Comment.class, Comment::getUserId, User.class)
+                .extractId(Comment.class, Comment::getAtUserIds, User.class)
+                .buildValue(User.class, testDAO::getUsers)
+                .buildValue(Comment.class, testDAO::getComments);
+
+        List<Post> posts = new ArrayList<>(testDAO.getPosts(Arrays.asList(1L, 2L, 3L)).values());
+        posts.get(0).setComments(new ArrayList<>(testDAO.getComments(singletonList(5L)).values()));
+        TestBuildContext generated = new TestBuildContext(1);
+        generatedBuilder.buildMulti(posts, generated);
+        TestBuildContext expected = new TestBuildContext(1);
+        lambdaBuilder.buildMulti(posts, expected);
+
+        assertEquals(expected.<Integer, User> getData(User.class), generated.getData(User.class));
+        assertEquals(expected.<Long, Comment> getData(Comment.class), generated.getData(Comment.class));
+        assertTrue(generated.getData(Comment.class).containsKey(5L));
+        assertTrue(generated.getData(User.class).containsKey(99));
+    }
+
+    @Test
+    void testGeneratedPrimitiveExtractors() {
+        Collection<Comment> comments = testDAO.getComments(Arrays.asList(1L, 2L, 3L)).values();
+        // primitive int ids are collected unboxed in a long namespace
+        SimpleModelBuilder<TestBuildContext> longBuilder = CommentExtractors.registerTo(
+                new SimpleModelBuilder<TestBuildContext>())
+                .buildLongValue("commentAuthor", (long[] ids) -> Arrays.stream(ids).boxed()
+                        .collect(toMap(identity(), id -> "user" + id)), "authorName");
+        TestBuildContext buildContext = new TestBuildContext(1);
+        longBuilder.buildMulti(comments, buildContext);
+        assertTrue(buildContext.getData("authorName") instanceof LongHashMap);
+        for (Comment comment : comments) {
+            assertEquals("user" + comment.getAuthorId(), buildContext.getData("authorName", comment.getAuthorId()));
+        }
+
+        // and boxed as Integer otherwise
+        List<Object> builtIds = new ArrayList<>();
+        SimpleModelBuilder<TestBuildContext> boxedBuilder = CommentExtractors.registerTo(
+                new SimpleModelBuilder<TestBuildContext>())
+                .buildValueTo("commentAuthor", (Collection<Object> ids) -> {
+                    builtIds.addAll(ids);
+                    return ids.stream().collect(toMap(identity(), id -> "user" + id));
+                }, "authorName");
+        buildContext = new TestBuildContext(1);
+        boxedBuilder.buildMulti(comments, buildContext);
+        assertFalse(builtIds.isEmpty());
+        assertTrue(builtIds.stream().allMatch(Integer.class::isInstance));
+        for (Comment comment : comments) {
+            assertEquals("user" + comment.getAuthorId(), buildContext.getData("authorName", comment.getAuthorId()));
+        }
+    }
+
+    @Test
+    void testSinkExtraction() {
+        SimpleModelBuilder<TestBuildContext> sinkBuilder = new SimpleModelBuilder<TestBuildContext>()
+                .extractIdsTo(Post.class, (post, sink) -> sink.accept(post.getUserId()), User.class)
+                .extractIdsTo(Post.class, (post, sink) -> sink.acceptAll(post.getCommentIds()), Comment.class)
+                .extractValuesTo(Post.class, (post, sink) -> {
+                    if (post.comments() != null) {
+                        post.comments().forEach(comment -> sink.accept(comment.getId(), comment));
+                    }
+                }, Comment.class)
+                .extractIdsTo(Comment.class, (comment, sink) -> {
+                    sink.accept(comment.getUserId());
+                    sink.acceptAll(comment.getAtUserIds());
+                }, User.class)
+                .buildValue(User.class, testDAO::getUsers)
+                .buildValue(Comment.class, testDAO::getComments);
+        SimpleModelBuilder<TestBuildContext> lambdaBuilder = new SimpleModelBuilder<TestBuildContext>()
+                .extractId(Post.class, Post::getUserId, User.class)
+                .extractId(Post.class, Post::getCommentIds, Comment.class)
+                .extractValue(Post.class, Post::comments, Comment::getId, Comment.class)
+                .extractId(Comment.class, Comment::getUserId, User.class)
+                .extractId(Comment.class, Comment::getAtUserIds, User.class)
+                .buildValue(User.class, testDAO::getUsers)
+                .buildValue(Comment.class, testDAO::getComments);
+
+        // rounds are reused by the builds, nothing of the former build should be left
+        for (List<Long> postIds : Arrays.asList(Arrays.asList(1L, 2L, 3L), Arrays.asList(3L),
+                Arrays.asList(1L, 2L, 3L))) {
+            List<Post> posts = new ArrayList<>(testDAO.getPosts(postIds).values());
+            posts.get(0).setComments(new ArrayList<>(testDAO.getComments(singletonList(5L)).values()));
+            TestBuildContext actual = new TestBuildContext(1);
+            sinkBuilder.buildMulti(posts, actual);
+            TestBuildContext expected = new TestBuildContext(1);
+            lambdaBuilder.buildMulti(posts, expected);
+
+            assertEquals(expected.<Integer, User> getData(User.class), actual.getData(User.class));
+            assertEquals(expected.<Long, Comment> getData(Comment.class), actual.getData(Comment.class));
+            assertTrue(actual.getData(Comment.class).containsKey(5L));
+        }
+    }
+
+    @Test
+    void testRoundReuse() {
+        // the round is the sink of extractors, so the sinks seen tell which rounds were used
+        Set<IdSink> sinks = Collections.newSetFromMap(new IdentityHashMap<>());
+        SimpleModelBuilder<TestBuildContext> builder = new SimpleModelBuilder<TestBuildContext>()
+                .extractIdsTo(Post.class, (post, sink) -> {
+                    sinks.add(sink);
+                    sink.accept(post.getUserId());
+                }, User.class)
+                .buildValue(User.class, testDAO::getUsers);
+        Collection<Post> posts = testDAO.getPosts(Arrays.asList(1L, 2L, 3L)).values();
+        builder.buildMulti(posts, new TestBuildContext(1));
+        assertEquals(1, sinks.size());
+        // by the later builds, including a huge one whose collections are not kept by the pool
+        List<Post> manyPosts = new ArrayList<>();
+        for (int i = 1; i <= 5000; i++) {
+            manyPosts.add(new Post(i, i, null));
+        }
+        builder.buildMulti(manyPosts, new TestBuildContext(1));
+        TestBuildContext buildContext = new TestBuildContext(1);
+        builder.buildMulti(posts, buildContext);
+        assertEquals(1, sinks.size());
+        for (Post post : posts) {
+            assertNotNull(buildContext.getData(User.class).get(post.getUserId()));
+        }
+
+        // and by the dataflow builds
+        sinks.clear();
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            builder.withExecutor(executor);
+            for (int i = 0; i < 3; i++) {
+                builder.buildMultiAsync(posts, new TestBuildContext(1)).join();
+            }
+            assertEquals(1, sinks.size());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void testParallelExtract() {
+        ForkJoinPool pool = new ForkJoinPool(4);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            SimpleModelBuilder<TestBuildContext> parallelBuilder = extractingBuilder().parallelExtract(pool, 100);
+            // value builders complete on the executor while the next objects are extracted
+            SimpleModelBuilder<TestBuildContext> dataflowBuilder = extractingBuilder().parallelExtract(pool, 100)
+                    .withExecutor(executor);
+            SimpleModelBuilder<TestBuildContext> sequentialBuilder = extractingBuilder();
+            List<Post> posts = new ArrayList<>();
+            for (int i = 1; i <= 2000; i++) {
+                posts.add(new Post(i, i % 150 + 1, singletonList((long) (i % 5 + 1))));
+            }
+
+            TestBuildContext expected = new TestBuildContext(1);
+            sequentialBuilder.buildMulti(posts, expected);
+            TestBuildContext actual = new TestBuildContext(1);
+            parallelBuilder.buildMulti(posts, actual);
+            TestBuildContext actualAsync = parallelBuilder.buildMultiAsync(posts, new TestBuildContext(1)).join();
+            TestBuildContext actualDataflow = new TestBuildContext(1);
+            dataflowBuilder.buildMulti(posts, actualDataflow);
+
+            for (TestBuildContext context : Arrays.asList(actual, actualAsync, actualDataflow)) {
+                assertEquals(expected.<Long, Post> getData(Post.class), context.getData(Post.class));
+                assertEquals(expected.<Integer, User> getData(User.class), context.getData(User.class));
+                assertEquals(expected.<Long, Comment> getData(Comment.class), context.getData(Comment.class));
+                assertEquals(expected.<Long, String> getData("userName"), context.getData("userName"));
+                assertEquals(100, context.getData(User.class).size());
+                assertEquals(150, context.getData("userName").size());
+            }
+        } finally {
+            pool.shutdown();
+            executor.shutdown();
+        }
+    }
+
+    private SimpleModelBuilder<TestBuildContext> extractingBuilder() {
+        return new SimpleModelBuilder<TestBuildContext>()
+                .valueFromSelf(Post.class, Post::getId)
+                .extractId(Post.class, Post::getUserId, User.class)
+                .extractId(Post.class, Post::getCommentIds, Comment.class)
+                .extractId(Comment.class, Comment::getAtUserIds, User.class)
+                .extractLongId(Post.class, Post::getUserId, "userId")
+                .buildLongValue("userId", (long[] ids) -> Arrays.stream(ids).boxed()
+                        .collect(toMap(identity(), id -> "user" + id)), "userName")
+                .buildValue(User.class, testDAO::getUsers)
+                .buildValue(Comment.class, testDAO::getComments);
+    }
+}
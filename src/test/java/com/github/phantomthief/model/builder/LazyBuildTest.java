@@ -0,0 +1,217 @@
+package com.github.phantomthief.model.builder;
+
+import static com.google.common.util.concurrent.Uninterruptibles.awaitUninterruptibly;
+import static java.util.Collections.singletonList;
+import static java.util.Collections.singletonMap;
+import static java.util.concurrent.TimeUnit.MINUTES;
+import static java.util.function.Function.identity;
+import static java.util.stream.Collectors.toMap;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+import com.github.phantomthief.model.builder.impl.SimpleModelBuilder;
+import com.github.phantomthief.model.builder.model.Post;
+import com.github.phantomthief.model.builder.model.User;
+import com.google.common.collect.Maps;
+
+/**
+ * @author w.vela
+ */
+class LazyBuildTest {
+
+    private final TestDAO testDAO = new TestDAO();
+
+    @Test
+    void testLazySingleFlight() throws Exception {
+        AtomicInteger builds = new AtomicInteger();
+        CountDownLatch building = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        SimpleModelBuilder<TestBuildContext> lazyBuilder = new SimpleModelBuilder<TestBuildContext>()
+                .extractId(Post.class, Post::getUserId, User.class)
+                .buildValue(User.class, testDAO::getUsers)
+                .lazyBuild(User.class, (Collection<Integer> ids) -> {
+                    builds.incrementAndGet();
+                    building.countDown();
+                    try {
+                        release.await();
+                    } catch (InterruptedException e) {
+                        throw new IllegalStateException(e);
+                    }
+                    return Maps.toMap(ids, id -> true);
+                }, "isFans")
+                .lazyBuild(User.class, (TestBuildContext context, Collection<Integer> ids) -> context
+                        .getData("self"), "self");
+
+        TestBuildContext buildContext = new TestBuildContext(1);
+        lazyBuilder.buildMulti(testDAO.getPosts(Arrays.asList(1L, 2L, 3L)).values(), buildContext);
+        ExecutorService executorService = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<Map<Integer, Boolean>>> readers = new ArrayList<>();
+            for (int i = 0; i < 4; i++) {
+                readers.add(executorService.submit(() -> buildContext.<Integer, Boolean> getData("isFans")));
+            }
+            building.await();
+            release.countDown();
+            for (Future<Map<Integer, Boolean>> reader : readers) {
+                assertEquals(buildContext.getData(User.class).size(), reader.get().size());
+            }
+            assertEquals(1, builds.get());
+        } finally {
+            executorService.shutdownNow();
+        }
+        assertThrows(IllegalStateException.class, () -> buildContext.getData("self"));
+    }
+
+    @Test
+    void testPrefetchLazy() throws InterruptedException {
+        AtomicInteger builds = new AtomicInteger();
+        Set<Thread> buildingThreads = ConcurrentHashMap.newKeySet();
+        CountDownLatch prefetched = new CountDownLatch(1);
+        SimpleModelBuilder<TestBuildContext> prefetchBuilder = new SimpleModelBuilder<TestBuildContext>()
+                .extractId(Post.class, Post::getUserId, User.class)
+                .buildValue(User.class, testDAO::getUsers)
+                .lazyBuild(User.class, (Collection<Integer> ids) -> {
+                    builds.incrementAndGet();
+                    buildingThreads.add(Thread.currentThread());
+                    prefetched.countDown();
+                    return Maps.toMap(ids, id -> true);
+                }, "isFans")
+                .prefetchLazy("isFans");
+
+        TestBuildContext buildContext = new TestBuildContext(1);
+        prefetchBuilder.buildMulti(testDAO.getPosts(Arrays.asList(1L, 2L, 3L)).values(), buildContext);
+        assertTrue(prefetched.await(1, MINUTES));
+        assertEquals(buildContext.getData(User.class).size(), buildContext.getData("isFans").size());
+        assertEquals(1, builds.get());
+        assertFalse(buildingThreads.contains(Thread.currentThread()));
+
+        assertThrows(IllegalStateException.class, () -> new SimpleModelBuilder<TestBuildContext>()
+                .prefetchLazy("notLazy")
+                .buildMulti(singletonList(1), new TestBuildContext(1)));
+    }
+
+    @Test
+    void testPrefetchDependentLazyOnSingleThread() throws Exception {
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            TestBuildContext buildContext = new TestBuildContext(1);
+            buildContext.getData(User.class).putAll(testDAO.getUsers(Arrays.asList(1, 2, 3)));
+            buildContext.setupLazyNodeData("isFans",
+                    context -> Maps.toMap(context.getData(User.class).keySet(), id -> true));
+            // depends on isFans, whose prefetching is queued behind it
+            buildContext.setupLazyNodeData("fansCount",
+                    context -> singletonMap("count", context.getData("isFans").size()));
+
+            buildContext.prefetchLazy("fansCount", executor);
+            buildContext.prefetchLazy("isFans", executor);
+            Future<Map<String, Integer>> fansCount = executor.submit(() -> buildContext.getData("fansCount"));
+            assertEquals(singletonMap("count", 3), fansCount.get(1, MINUTES));
+            assertEquals(3, buildContext.getData("isFans").size());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void testLazyBuildByKey() {
+        List<Collection<Integer>> batches = new ArrayList<>();
+        SimpleModelBuilder<TestBuildContext> keyLazyBuilder = new SimpleModelBuilder<TestBuildContext>()
+                .valueFromSelf(User.class, User::getId)
+                .lazyBuildByKey(User.class, (Collection<Integer> ids) -> {
+                    batches.add(new ArrayList<>(ids));
+                    return Maps.toMap(ids, id -> id % 2 == 0);
+                }, "isFans");
+
+        TestBuildContext buildContext = new TestBuildContext(1);
+        keyLazyBuilder.buildMulti(testDAO.getUsers(Arrays.asList(1, 2, 3, 4, 5, 6)).values(), buildContext);
+        Map<Integer, User> users = buildContext.getData(User.class);
+        List<Integer> userIds = new ArrayList<>(users.keySet());
+        assertTrue(userIds.size() > 3);
+        assertTrue(batches.isEmpty());
+
+        Map<Integer, Boolean> isFans = buildContext.getData("isFans");
+        assertEquals(userIds.get(0) % 2 == 0, isFans.get(userIds.get(0)));
+        assertEquals(singletonList(userIds.get(0)), batches.get(0));
+        assertNull(isFans.get(-1));
+        assertEquals(1, batches.size());
+
+        buildContext.prefetchKeys("isFans", userIds.subList(1, 3));
+        assertEquals(userIds.get(1) % 2 == 0, isFans.get(userIds.get(1)));
+        assertEquals(userIds.subList(1, 3), batches.get(1));
+        assertTrue(isFans.containsKey(userIds.get(2)));
+        assertEquals(2, batches.size());
+
+        assertEquals(userIds.size(), isFans.size());
+        assertEquals(3, batches.size());
+        assertEquals(userIds.size() - 3, batches.get(2).size());
+    }
+
+    @Test
+    void testLazyBuildByKeyConcurrently() throws Exception {
+        CountDownLatch building = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        SimpleModelBuilder<TestBuildContext> keyLazyBuilder = new SimpleModelBuilder<TestBuildContext>()
+                .valueFromSelf(User.class, User::getId)
+                .lazyBuildByKey(User.class, (Collection<Integer> ids) -> {
+                    if (ids.contains(2)) {
+                        building.countDown();
+                        awaitUninterruptibly(release);
+                    }
+                    return Maps.toMap(ids, id -> id % 2 == 0);
+                }, "isFans");
+        TestBuildContext buildContext = new TestBuildContext(1);
+        keyLazyBuilder.buildMulti(testDAO.getUsers(Arrays.asList(1, 2, 3)).values(), buildContext);
+        Map<Integer, Boolean> isFans = buildContext.getData("isFans");
+        assertFalse(isFans.get(1));
+
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Future<Boolean> slow = executor.submit(() -> isFans.get(2));
+            building.await();
+            // the builder is called without holding the map, other keys are still built and read
+            assertFalse(isFans.get(1));
+            assertFalse(executor.submit(() -> isFans.get(3)).get(1, MINUTES));
+            assertFalse(slow.isDone());
+            release.countDown();
+            assertTrue(slow.get());
+        } finally {
+            executor.shutdownNow();
+        }
+
+        // keys of a long source namespace are the same, no matter read by Integer or Long
+        List<Collection<Long>> batches = new ArrayList<>();
+        SimpleModelBuilder<TestBuildContext> longKeyBuilder = new SimpleModelBuilder<TestBuildContext>()
+                .extractLongId(Post.class, Post::getUserId, User.class)
+                .buildLongValue(User.class, (long[] ids) -> Arrays.stream(ids).boxed()
+                        .collect(toMap(identity(), id -> new User((int) (long) id))), User.class)
+                .lazyBuildByKey(User.class, (Collection<Long> ids) -> {
+                    batches.add(new ArrayList<>(ids));
+                    return Maps.toMap(ids, id -> id % 2 == 0);
+                }, "isFans");
+        buildContext = new TestBuildContext(1);
+        longKeyBuilder.buildMulti(testDAO.getPosts(Arrays.asList(1L, 2L, 3L)).values(), buildContext);
+        Map<Object, Boolean> longIsFans = buildContext.getData("isFans");
+        Post post = testDAO.getPosts(singletonList(1L)).get(1L);
+        assertEquals(post.getUserId() % 2 == 0, longIsFans.get(post.getUserId()));
+        assertEquals(post.getUserId() % 2 == 0, longIsFans.get((long) post.getUserId()));
+        assertEquals(singletonList(singletonList((long) post.getUserId())), batches);
+    }
+}
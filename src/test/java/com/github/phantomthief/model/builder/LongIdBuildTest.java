@@ -0,0 +1,77 @@
+package com.github.phantomthief.model.builder;
+
+import static java.util.Collections.singletonList;
+import static java.util.function.Function.identity;
+import static java.util.stream.Collectors.toList;
+import static java.util.stream.Collectors.toMap;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.junit.jupiter.api.Test;
+
+import com.github.phantomthief.model.builder.impl.SimpleModelBuilder;
+import com.github.phantomthief.model.builder.model.Post;
+import com.github.phantomthief.model.builder.model.User;
+import com.google.common.collect.ImmutableList;
+
+/**
+ * @author w.vela
+ */
+class LongIdBuildTest {
+
+    private final TestDAO testDAO = new TestDAO();
+
+    @Test
+    void testLongIdBuild() {
+        Set<Long> builtUserIds = new HashSet<>();
+        SimpleModelBuilder<TestBuildContext> longIdBuilder = new SimpleModelBuilder<TestBuildContext>()
+                .valueFromSelf(Post.class, Post::getId)
+                .valueFromSelf(User.class, User::getId)
+                .extractLongId(Post.class, Post::getUserId, User.class)
+                .buildLongValue(User.class, (long[] ids) -> {
+                    Arrays.stream(ids).forEach(builtUserIds::add);
+                    return testDAO.getUsers(Arrays.stream(ids).mapToObj(id -> (int) id).collect(toList()))
+                            .values().stream().collect(toMap(user -> (long) user.getId(), identity()));
+                }, User.class)
+                // generic value builders on a long namespace receive boxed ids.
+                .buildValueTo(User.class,
+                        (Collection<Long> ids) -> ids.stream().collect(toMap(identity(), id -> "user" + id)),
+                        "userName");
+
+        User builtUser = testDAO.getUsers(singletonList(1)).get(1);
+        Collection<Post> posts = testDAO.getPosts(Arrays.asList(1L, 2L, 3L)).values();
+        TestBuildContext buildContext = new TestBuildContext(1);
+        longIdBuilder.buildMulti(ImmutableList.builder().addAll(posts).add(builtUser).build(), buildContext);
+        assertFalse(builtUserIds.contains(1L));
+        for (Post post : posts) {
+            User user = buildContext.getData(User.class, post.getUserId());
+            assertEquals(post.getUserId(), user.getId());
+            // any integral key works on the map of a long namespace.
+            assertEquals(user, buildContext.getData(User.class).get(post.getUserId()));
+            assertEquals(user, buildContext.getData(User.class).get((long) post.getUserId()));
+            assertEquals("user" + user.getId(), buildContext.getData("userName").get((long) user.getId()));
+        }
+        assertEquals(builtUser, buildContext.getData(User.class, 1));
+
+        TestBuildContext asyncContext = longIdBuilder.buildMultiAsync(posts, new TestBuildContext(1)).join();
+        posts.forEach(post -> assertNotNull(asyncContext.getData(User.class, post.getUserId())));
+    }
+
+    @Test
+    void testPrimitiveIdLookup() {
+        TestBuildContext buildContext = new TestBuildContext(1);
+        buildContext.<Integer, Boolean> getData("isFans").put(1, true);
+        buildContext.<Long, Boolean> getData("isFollowing").put(2L, true);
+        assertTrue(buildContext.<Boolean> getData("isFans", 1));
+        assertTrue(buildContext.<Boolean> getData("isFollowing", 2));
+        assertNull(buildContext.getData("isFans", 2));
+    }
+}
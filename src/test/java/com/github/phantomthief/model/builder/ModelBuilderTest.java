@@ -3,9 +3,8 @@ package com.github.phantomthief.model.builder;
 import static com.github.phantomthief.model.builder.impl.LazyBuilder.on;
 import static java.util.Collections.emptyMap;
 import static java.util.Collections.singletonList;
-import static java.util.function.Function.identity;
+import static java.util.concurrent.CompletableFuture.supplyAsync;
 import static java.util.stream.Collectors.toList;
-import static java.util.stream.Collectors.toMap;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
@@ -15,10 +14,10 @@ import static org.slf4j.LoggerFactory.getLogger;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
-import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -32,10 +31,7 @@ import com.github.phantomthief.model.builder.model.HasUser;
 import com.github.phantomthief.model.builder.model.Post;
 import com.github.phantomthief.model.builder.model.SubUser;
 import com.github.phantomthief.model.builder.model.User;
-import com.google.common.collect.HashMultimap;
 import com.google.common.collect.ImmutableList;
-import com.google.common.collect.Maps;
-import com.google.common.collect.Multimap;
 
 /**
  * @author w.vela
@@ -145,6 +141,51 @@ class ModelBuilderTest {
         logger.info("fin.");
     }
 
+    @Test
+    void testBuildWithExecutor() {
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            builder = ((SimpleModelBuilder<TestBuildContext>) builder).withExecutor(executor);
+            testBuild();
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    void testCompiledBuild() {
+        SimpleModelBuilder<TestBuildContext> simpleModelBuilder = (SimpleModelBuilder<TestBuildContext>) builder;
+        builder = simpleModelBuilder.compile();
+        // registrations after compiling don't affect the compiled one.
+        simpleModelBuilder.buildValueTo(User.class, (Collection<Integer> ids) -> {
+            throw new IllegalStateException();
+        }, "notCompiled");
+        testBuild();
+    }
+
+    @Test
+    void testBuildAsync() {
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            builder = ((SimpleModelBuilder<TestBuildContext>) builder).buildValueAsync(User.class,
+                    (TestBuildContext context, Collection<Integer> ids) -> supplyAsync(
+                            () -> testDAO.isFans(context.getVisitorId(), ids), executor),
+                    "isFansAsync");
+            List<Object> sources = new ArrayList<>(testDAO.getPosts(Arrays.asList(1L, 2L, 3L)).values());
+            sources.add(new SubUser(99));
+            TestBuildContext buildContext = builder.buildMultiAsync(sources, new TestBuildContext(1))
+                    .join();
+            Map<Integer, Boolean> isFans = buildContext.getData("isFansAsync");
+            assertFalse(isFans.isEmpty());
+            buildContext.getData(User.class).values().forEach(user -> {
+                assertUser(buildContext, user);
+                assertEquals(testDAO.fansMap.get(1).contains(user.getId()), isFans.get(user.getId()));
+            });
+        } finally {
+            executor.shutdown();
+        }
+    }
+
     @Test
     void testNullBuild() {
         TestBuildContext buildContext = new TestBuildContext(1);
@@ -220,102 +261,4 @@ class ModelBuilderTest {
             }
         }
     }
-
-    private class TestDAO {
-
-        private static final int USER_MAX = 100;
-        private final Map<Long, Post> posts = ImmutableList
-                .of(new Post(1, 1, null),
-                        new Post(2, 1, Arrays.asList(1L, 2L, 3L)),
-                        new Post(3, 2, Arrays.asList(4L, 5L)))
-                .stream().collect(toMap(Post::getId, identity()));
-
-        private final Map<Long, Comment> cmts = ImmutableList
-                .of(new Comment(1, 1, null), new Comment(2, 2, null), new Comment(3, 1, null),
-                        new Comment(4, 2, Arrays.asList(2, 3)),
-                        new Comment(5, 11, Arrays.asList(2, 99)))
-                .stream().collect(toMap(Comment::getId, identity()));
-
-        private final Multimap<Integer, Integer> followingMap = HashMultimap.create();
-        private final Multimap<Integer, Integer> fansMap = HashMultimap.create();
-        private Set<Integer> retreievedUserIds;
-        private Set<Long> retreievedPostIds;
-        private Set<Long> retreievedCommentIds;
-        private Set<Integer> retrievedFollowUserIds;
-        private Set<Integer> retrievedFansUserIds;
-
-        {
-            followingMap.put(1, 5);
-            followingMap.put(1, 2);
-        }
-
-        {
-            fansMap.put(1, 5);
-            fansMap.put(1, 99);
-        }
-
-        Map<Integer, User> getUsers(Collection<Integer> ids) {
-            if (retreievedUserIds != null) {
-                logger.info("try to get users:{}", ids);
-                for (Integer id : ids) {
-                    assertTrue(retreievedUserIds.add(id));
-                }
-            }
-            return ids.stream().filter(i -> i <= USER_MAX).collect(toMap(identity(), User::new));
-        }
-
-        Map<Long, Post> getPosts(Collection<Long> ids) {
-            if (retreievedPostIds != null) {
-                logger.info("try to get posts:{}", ids);
-                for (Long id : ids) {
-                    assertTrue(retreievedPostIds.add(id));
-                }
-            }
-            return Maps.filterKeys(posts, ids::contains);
-        }
-
-        Map<Long, Comment> getComments(Collection<Long> ids) {
-            if (ids == null) {
-                return emptyMap();
-            }
-            if (retreievedCommentIds != null) {
-                logger.info("try to get cmts:{}", ids);
-                for (Long id : ids) {
-                    assertTrue(retreievedCommentIds.add(id));
-                }
-            }
-            return Maps.filterKeys(cmts, ids::contains);
-        }
-
-        Map<Integer, Boolean> isFollowing(int fromUserId, Collection<Integer> ids) {
-            if (retrievedFollowUserIds != null) {
-                logger.info("try to get followings:{}->{}", fromUserId, ids);
-                for (Integer id : ids) {
-                    assertTrue(retrievedFollowUserIds.add(id));
-                }
-            }
-            Collection<Integer> followings = followingMap.get(fromUserId);
-            return ids.stream().collect(toMap(identity(), followings::contains));
-        }
-
-        Map<Integer, Boolean> isFans(int fromUserId, Collection<Integer> ids) {
-            if (retrievedFansUserIds != null) {
-                logger.info("try to get fans:{}->{}", fromUserId, ids);
-                for (Integer id : ids) {
-                    assertTrue(retrievedFansUserIds.add(id));
-                }
-            }
-            Collection<Integer> fans = fansMap.get(fromUserId);
-            return ids.stream().collect(toMap(identity(), fans::contains));
-        }
-
-        void assertOn() {
-            logger.info("assert on.");
-            retreievedUserIds = new HashSet<>();
-            retreievedPostIds = new HashSet<>();
-            retreievedCommentIds = new HashSet<>();
-            retrievedFollowUserIds = new HashSet<>();
-            retrievedFansUserIds = new HashSet<>();
-        }
-    }
 }
@@ -0,0 +1,189 @@
+package com.github.phantomthief.model.builder;
+
+import static java.util.Collections.singleton;
+import static java.util.Collections.singletonList;
+import static java.util.concurrent.CompletableFuture.completedFuture;
+import static java.util.concurrent.CompletableFuture.supplyAsync;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.MINUTES;
+import static java.util.stream.Collectors.toList;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.jupiter.api.Test;
+
+import com.github.phantomthief.model.builder.cache.ValueCache;
+import com.github.phantomthief.model.builder.impl.SimpleModelBuilder;
+import com.github.phantomthief.model.builder.model.Post;
+import com.github.phantomthief.model.builder.model.User;
+import com.google.common.collect.ImmutableList;
+import com.google.common.util.concurrent.UncheckedTimeoutException;
+
+/**
+ * @author w.vela
+ */
+class ValueBuildOptionsTest {
+
+    private final TestDAO testDAO = new TestDAO();
+
+    @Test
+    void testValueCache() {
+        ValueCache userCache = ValueCache.newBuilder()
+                .maximumSize(100)
+                .cacheNegative(1, MINUTES)
+                .build();
+        SimpleModelBuilder<TestBuildContext> cachedBuilder = new SimpleModelBuilder<TestBuildContext>()
+                .extractId(Post.class, Post::getUserId, User.class)
+                .extractId(Integer.class, id -> id, User.class)
+                .buildValue(User.class, testDAO::getUsers)
+                .cacheValue(User.class, userCache);
+
+        List<Object> sources = new ArrayList<>(testDAO.getPosts(Arrays.asList(1L, 2L, 3L)).values());
+        sources.add(101);
+        cachedBuilder.buildMulti(sources, new TestBuildContext(1));
+        assertEquals(0, userCache.hitCount());
+        assertEquals(3, userCache.missCount());
+
+        // none of the users is fetched again by another build, including the non-existed one.
+        testDAO.assertOn();
+        TestBuildContext buildContext = new TestBuildContext(2);
+        cachedBuilder.buildMulti(sources, buildContext);
+        assertEquals(3, userCache.hitCount());
+        assertEquals(2, buildContext.getData(User.class).size());
+        assertNotNull(buildContext.getData(User.class).get(1));
+
+        cachedBuilder.invalidateCache(User.class, singletonList(1));
+        cachedBuilder.buildMulti(sources, new TestBuildContext(3));
+        assertEquals(singleton(1), testDAO.retreievedUserIds);
+
+        // values depend on visitor can't be shared among builds.
+        cachedBuilder.buildValueTo(User.class, (TestBuildContext context, Collection<Integer> ids) -> testDAO
+                .isFollowing(context.getVisitorId(), ids), "isFollowing")
+                .cacheValue("isFollowing", ValueCache.newBuilder().maximumSize(100).build());
+        assertThrows(IllegalStateException.class, () -> cachedBuilder.buildMulti(sources, new TestBuildContext(1)));
+    }
+
+    @Test
+    void testBatchBuild() throws Exception {
+        List<Collection<Integer>> batches = new ArrayList<>();
+        // the window never ends during the test, the batch is flushed once both builds are in it.
+        SimpleModelBuilder<TestBuildContext> batchedBuilder = new SimpleModelBuilder<TestBuildContext>()
+                .extractId(Post.class, Post::getUserId, User.class)
+                .buildValue(User.class, (Collection<Integer> ids) -> {
+                    synchronized (batches) {
+                        batches.add(new ArrayList<>(ids));
+                    }
+                    return testDAO.getUsers(ids);
+                })
+                .batchValue(User.class, 1, MINUTES, 2);
+
+        ExecutorService executorService = Executors.newFixedThreadPool(2);
+        try {
+            // users of posts: 1, 1 and 2
+            List<CompletableFuture<TestBuildContext>> builds = new ArrayList<>();
+            for (List<Long> postIds : ImmutableList.of(Arrays.asList(1L, 2L), singletonList(3L))) {
+                builds.add(supplyAsync(() -> {
+                    TestBuildContext buildContext = new TestBuildContext(1);
+                    batchedBuilder.buildMulti(testDAO.getPosts(postIds).values(), buildContext);
+                    return buildContext;
+                }, executorService));
+            }
+            for (CompletableFuture<TestBuildContext> build : builds) {
+                assertFalse(build.get(1, MINUTES).getData(User.class).isEmpty());
+            }
+        } finally {
+            executorService.shutdownNow();
+        }
+        // concurrent builds share one call
+        assertEquals(singletonList(2), batches.stream().map(Collection::size).collect(toList()));
+
+        // a batch not full is flushed by the window
+        batches.clear();
+        batchedBuilder.batchValue(User.class, 1, MILLISECONDS, 2);
+        TestBuildContext buildContext = new TestBuildContext(1);
+        batchedBuilder.buildMulti(testDAO.getPosts(singletonList(3L)).values(), buildContext);
+        assertNotNull(buildContext.getData(User.class).get(2));
+        assertEquals(singletonList(singletonList(2)), batches);
+    }
+
+    @Test
+    void testChunkBuild() {
+        List<Integer> batchSizes = new ArrayList<>();
+        ExecutorService executorService = Executors.newFixedThreadPool(2);
+        try {
+            SimpleModelBuilder<TestBuildContext> chunkedBuilder = new SimpleModelBuilder<TestBuildContext>()
+                    .extractId(Integer.class, id -> id, User.class)
+                    .buildValue(User.class, (TestBuildContext context, Collection<Integer> ids) -> {
+                        synchronized (batchSizes) {
+                            batchSizes.add(ids.size());
+                        }
+                        return testDAO.getUsers(ids);
+                    })
+                    .chunkValue(User.class, 2, executorService);
+            List<Integer> userIds = Arrays.asList(1, 2, 3, 4, 5);
+            TestBuildContext buildContext = new TestBuildContext(1);
+            chunkedBuilder.buildMulti(userIds, buildContext);
+            assertEquals(userIds.size(), buildContext.getData(User.class).size());
+            assertEquals(3, batchSizes.size());
+            batchSizes.forEach(size -> assertTrue(size <= 2));
+        } finally {
+            executorService.shutdownNow();
+        }
+    }
+
+    @Test
+    void testTimeoutBuild() {
+        // the futures of value builders are never completed by the test, so the builds time out whatever the
+        // timeouts are, and a completed one is never timed out.
+        CompletableFuture<Map<Integer, Boolean>> hangingFans = new CompletableFuture<>();
+        SimpleModelBuilder<TestBuildContext> timeoutBuilder = new SimpleModelBuilder<TestBuildContext>()
+                .extractId(Post.class, Post::getUserId, User.class)
+                .buildValue(User.class, testDAO::getUsers)
+                .buildValueAsync(User.class, (Collection<Integer> ids) -> hangingFans, "isFans")
+                .timeoutValue("isFans", 1, MILLISECONDS)
+                .optionalValue("isFans");
+
+        Collection<Post> posts = testDAO.getPosts(Arrays.asList(1L, 2L, 3L)).values();
+        TestBuildContext buildContext = new TestBuildContext(1);
+        timeoutBuilder.buildMulti(posts, buildContext);
+        assertFalse(buildContext.getData(User.class).isEmpty());
+        assertTrue(buildContext.getData("isFans").isEmpty());
+        assertTrue(buildContext.isDegraded("isFans"));
+        assertFalse(buildContext.isDegraded(User.class));
+        assertTrue(hangingFans.isCancelled());
+        TestBuildContext asyncContext = timeoutBuilder.buildMultiAsync(posts, new TestBuildContext(1)).join();
+        assertTrue(asyncContext.isDegraded("isFans"));
+
+        // a required namespace fails the build by the deadline of build context.
+        CompletableFuture<Map<Integer, User>> hangingUsers = new CompletableFuture<>();
+        SimpleModelBuilder<TestBuildContext> requiredBuilder = new SimpleModelBuilder<TestBuildContext>()
+                .extractId(Post.class, Post::getUserId, User.class)
+                .buildValueAsync(User.class, (Collection<Integer> ids) -> hangingUsers, User.class);
+        TestBuildContext deadlineContext = new TestBuildContext(1);
+        deadlineContext.withTimeout(1, MILLISECONDS);
+        assertThrows(UncheckedTimeoutException.class, () -> requiredBuilder.buildMulti(posts, deadlineContext));
+        assertTrue(hangingUsers.isCancelled());
+
+        SimpleModelBuilder<TestBuildContext> completedBuilder = new SimpleModelBuilder<TestBuildContext>()
+                .extractId(Post.class, Post::getUserId, User.class)
+                .buildValueAsync(User.class, (Collection<Integer> ids) -> completedFuture(testDAO.getUsers(ids)),
+                        User.class)
+                .timeoutValue(User.class, 1, MILLISECONDS);
+        TestBuildContext completedContext = new TestBuildContext(1);
+        completedBuilder.buildMulti(posts, completedContext);
+        assertFalse(completedContext.isDegraded(User.class));
+        assertFalse(completedContext.getData(User.class).isEmpty());
+    }
+}
@@ -0,0 +1,146 @@
+package com.github.phantomthief.model.builder;
+
+import static java.util.Collections.singleton;
+import static java.util.Collections.singletonList;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.jupiter.api.Test;
+
+import com.github.phantomthief.model.builder.impl.SimpleModelBuilder;
+import com.github.phantomthief.model.builder.model.Comment;
+import com.github.phantomthief.model.builder.model.Fake;
+import com.github.phantomthief.model.builder.model.HasUser;
+import com.github.phantomthief.model.builder.model.Post;
+import com.github.phantomthief.model.builder.model.SubUser;
+import com.github.phantomthief.model.builder.model.User;
+import com.github.phantomthief.view.mapper.ViewMapper;
+import com.github.phantomthief.view.mapper.impl.DefaultViewMapperImpl;
+import com.github.phantomthief.view.mapper.impl.OverrideViewMapper;
+import com.github.phantomthief.view.mapper.impl.ParallelViewMapper;
+
+/**
+ * @author w.vela
+ */
+class ViewMapperTest {
+
+    private final TestDAO testDAO = new TestDAO();
+
+    @Test
+    void testParallelViewMapper() {
+        List<Integer> userIds = new ArrayList<>();
+        for (int i = 1; i <= 100; i++) {
+            userIds.add(i);
+        }
+        SimpleModelBuilder<TestBuildContext> fansBuilder = new SimpleModelBuilder<TestBuildContext>()
+                .valueFromSelf(User.class, User::getId)
+                .lazyBuild(User.class, (TestBuildContext context, Collection<Integer> ids) -> testDAO
+                        .isFans(context.getVisitorId(), ids), "isFans");
+        TestBuildContext buildContext = new TestBuildContext(1);
+        fansBuilder.buildMulti(testDAO.getUsers(userIds).values(), buildContext);
+
+        Set<Thread> threads = ConcurrentHashMap.newKeySet();
+        ViewMapper viewMapper = new DefaultViewMapperImpl().addMapper(User.class, (context, user) -> {
+            threads.add(Thread.currentThread());
+            return context.getData("isFans").get(user.getId());
+        });
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            ViewMapper parallelMapper = new OverrideViewMapper(new ParallelViewMapper(viewMapper, pool, 10))
+                    .addMapper(SubUser.class, (SubUser user, TestBuildContext context) -> "sub");
+            List<User> users = new ArrayList<>(buildContext.<Integer, User> getData(User.class).values());
+            users.add(50, new SubUser(99));
+            List<Object> views = parallelMapper.map(users, buildContext);
+            assertEquals(users.size(), views.size());
+            for (int i = 0; i < users.size(); i++) {
+                User user = users.get(i);
+                assertEquals(user instanceof SubUser ? "sub"
+                        : buildContext.getData("isFans").get(user.getId()), views.get(i));
+            }
+            assertTrue(threads.size() > 1);
+
+            threads.clear();
+            parallelMapper.map(users.subList(0, 9), buildContext);
+            assertEquals(singleton(Thread.currentThread()), threads);
+
+            ViewMapper failingMapper = new ParallelViewMapper(new DefaultViewMapperImpl()
+                    .addMapper(User.class, (context, user) -> {
+                        if (user.getId() % 30 == 0) {
+                            throw new IllegalArgumentException(String.valueOf(user.getId()));
+                        }
+                        return user;
+                    }), pool, 10);
+            IllegalArgumentException e = assertThrows(IllegalArgumentException.class,
+                    () -> failingMapper.map(users, buildContext));
+            assertEquals("30", e.getMessage());
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    @Test
+    void testViewMapperDispatch() {
+        DefaultViewMapperImpl viewMapper = new DefaultViewMapperImpl()
+                .addViewFactory(User.class, (user, context) -> "user")
+                .addViewFactory(HasUser.class, (hasUser, context) -> "hasUser");
+        TestBuildContext buildContext = new TestBuildContext(1);
+        SubUser subUser = new SubUser(2);
+        Post post = testDAO.getPosts(singletonList(1L)).get(1L);
+        Comment comment = testDAO.getComments(singletonList(1L)).get(1L);
+        // by superclass and by interface
+        assertEquals("user", viewMapper.map(subUser, buildContext));
+        assertEquals("hasUser", viewMapper.map(post, buildContext));
+        assertEquals("hasUser", viewMapper.map(comment, buildContext));
+        assertThrows(NullPointerException.class, () -> viewMapper.map(new Object(), buildContext));
+
+        // mappers added after the first lookup of a type are picked up
+        viewMapper.addViewFactory(SubUser.class, (user, context) -> "subUser")
+                .addViewFactory(Comment.class, (c, context) -> "comment");
+        assertEquals("subUser", viewMapper.map(subUser, buildContext));
+        assertEquals("user", viewMapper.map(new User(3), buildContext));
+        assertEquals("comment", viewMapper.map(comment, buildContext));
+        assertEquals("hasUser", viewMapper.map(post, buildContext));
+    }
+
+    @Test
+    void testOverrideViewMapperChain() {
+        TestBuildContext buildContext = new TestBuildContext(1);
+        DefaultViewMapperImpl defaultMapper = new DefaultViewMapperImpl()
+                .addMapper(User.class, (context, user) -> "user");
+        OverrideViewMapper inner = new OverrideViewMapper(defaultMapper)
+                .addMapper(SubUser.class, (SubUser user, TestBuildContext context) -> "inner");
+        OverrideViewMapper outer = new OverrideViewMapper(inner);
+
+        assertEquals("user", outer.map(new User(1), buildContext));
+        assertEquals("inner", outer.map(new SubUser(2), buildContext));
+        assertThrows(NullPointerException.class, () -> outer.map(new Fake(), buildContext));
+        assertThrows(NullPointerException.class, () -> outer.map(new Fake(), buildContext));
+
+        // changes of wrapped mappers are seen by folded lookups
+        outer.addMapper(User.class, (User user, TestBuildContext context) -> "outer");
+        assertEquals("outer", outer.map(new SubUser(2), buildContext));
+        assertEquals("inner", inner.map(new SubUser(2), buildContext));
+        defaultMapper.addMapper(Fake.class, (context, fake) -> "fake");
+        assertEquals("fake", outer.map(new Fake(), buildContext));
+
+        // a subclass overriding map() is called instead of being folded
+        OverrideViewMapper custom = new OverrideViewMapper(new DefaultViewMapperImpl() {
+
+            @SuppressWarnings("unchecked")
+            @Override
+            public <M, V, B> V map(M model, B buildContext) {
+                return (V) "custom";
+            }
+        });
+        assertEquals("custom", custom.map(new User(1), buildContext));
+        assertEquals("custom", new OverrideViewMapper(custom).map(new User(1), buildContext));
+    }
+}
@@ -0,0 +1,70 @@
+package com.github.phantomthief.model.builder;
+
+import static java.util.Collections.singletonList;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.junit.jupiter.api.Test;
+
+import com.github.phantomthief.model.builder.model.Comment;
+import com.github.phantomthief.model.builder.model.Post;
+import com.github.phantomthief.model.builder.model.SubUser;
+import com.github.phantomthief.model.builder.model.User;
+import com.github.phantomthief.model.builder.view.CommentView;
+import com.github.phantomthief.model.builder.view.PostView;
+import com.github.phantomthief.model.builder.view.UserView;
+import com.github.phantomthief.view.mapper.ViewFactory;
+import com.github.phantomthief.view.mapper.ViewMapper;
+import com.github.phantomthief.view.mapper.ViewScanner;
+
+/**
+ * @author w.vela
+ */
+class ViewScannerTest {
+
+    private final TestDAO testDAO = new TestDAO();
+
+    @Test
+    void testViewScanner() throws IOException {
+        ViewScanner scanner = ViewScanner.scan("com.github.phantomthief.model.builder.view");
+        assertEquals(Arrays.asList(CommentView.class.getName(), PostView.class.getName(),
+                UserView.class.getName()), scanner.getViewClassNames());
+        ViewMapper viewMapper = scanner.toViewMapper();
+        TestBuildContext buildContext = new TestBuildContext(7);
+
+        User user = new User(1);
+        UserView userView = viewMapper.map(user, buildContext);
+        assertSame(user, userView.getUser());
+        assertTrue(userView.isWithBuildContext());
+        SubUser subUser = new SubUser(2);
+        assertSame(subUser, viewMapper.<User, UserView, TestBuildContext> map(subUser, buildContext).getUser());
+
+        Post post = testDAO.getPosts(singletonList(1L)).get(1L);
+        assertSame(post, viewMapper.<Post, PostView, TestBuildContext> map(post, buildContext).getPost());
+        Comment comment = testDAO.getComments(singletonList(1L)).get(1L);
+        CommentView commentView = viewMapper.map(comment, buildContext);
+        assertSame(comment, commentView.getComment());
+        assertEquals(7, commentView.getVisitorId());
+
+        ViewScanner cached = ViewScanner.of(scanner.getViewClassNames(), getClass().getClassLoader());
+        assertEquals(scanner.getFactories().keySet(), cached.getFactories().keySet());
+
+        // the copy constructor of PostView is not a factory
+        assertFalse(scanner.getFactories().containsKey(PostView.class));
+        assertThrows(IllegalArgumentException.class,
+                () -> ViewScanner.ofTypes(Arrays.asList(UserView.class, DuplicateUserView.class)));
+    }
+
+    public static class DuplicateUserView {
+
+        @ViewFactory
+        public DuplicateUserView(User user) {
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package com.github.phantomthief.model.builder.jfr;
+
+import static java.util.function.Function.identity;
+import static java.util.stream.Collectors.groupingBy;
+import static java.util.stream.Collectors.toMap;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+import com.github.phantomthief.model.builder.context.impl.SimpleBuildContext;
+import com.github.phantomthief.model.builder.impl.SimpleModelBuilder;
+import com.github.phantomthief.model.builder.model.Post;
+import com.github.phantomthief.model.builder.model.User;
+import com.github.phantomthief.view.mapper.ViewMapper;
+import com.github.phantomthief.view.mapper.impl.DefaultViewMapperImpl;
+import com.github.phantomthief.view.mapper.jfr.JfrViewMapper;
+import com.google.common.collect.Maps;
+
+/**
+ * @author w.vela
+ */
+class JfrEventsTest {
+
+    @Test
+    void testJfrEvents() throws IOException {
+        SimpleModelBuilder<SimpleBuildContext> recordedBuilder = new SimpleModelBuilder<SimpleBuildContext>()
+                .extractId(Post.class, Post::getUserId, User.class)
+                .buildValue(User.class, (Collection<Integer> ids) -> ids.stream()
+                        .collect(toMap(identity(), User::new)))
+                .lazyBuild(User.class, (Collection<Integer> ids) -> Maps.toMap(ids, id -> true), "isFans")
+                .metricsListener(new JfrBuildMetricsListener());
+        ViewMapper viewMapper = new JfrViewMapper(new DefaultViewMapperImpl()
+                .addMapper(Post.class, (context, post) -> context.getData("isFans").get(post.getUserId())));
+
+        Path file = Files.createTempFile("model-builder", ".jfr");
+        List<RecordedEvent> events;
+        try (Recording recording = new Recording()) {
+            recording.enable("com.github.phantomthief.*");
+            recording.start();
+            List<Post> posts = Arrays.asList(new Post(1, 1, null), new Post(2, 2, null), new Post(3, 1, null));
+            SimpleBuildContext buildContext = new SimpleBuildContext();
+            recordedBuilder.buildMulti(posts, buildContext);
+            assertEquals(posts.size(), viewMapper.map(posts, buildContext).size());
+            recording.stop();
+            recording.dump(file);
+            events = RecordingFile.readAllEvents(file);
+        } finally {
+            Files.delete(file);
+        }
+        Map<String, List<RecordedEvent>> byName = events.stream()
+                .collect(groupingBy(event -> event.getEventType().getName()));
+        assertEquals(2, byName.get("com.github.phantomthief.model.builder.Build").get(0).getInt("rounds"));
+        assertEquals(2, byName.get("com.github.phantomthief.model.builder.Round").size());
+        RecordedEvent valueBuild = byName.get("com.github.phantomthief.model.builder.ValueBuild").get(0);
+        assertEquals(User.class.toString(), valueBuild.getString("namespace"));
+        assertEquals(1, byName.get("com.github.phantomthief.model.builder.LazyBuild").size());
+        RecordedEvent viewMap = byName.get("com.github.phantomthief.view.mapper.ViewMap").get(0);
+        assertEquals(3, viewMap.getInt("modelCount"));
+        assertEquals(DefaultViewMapperImpl.class.getName(), viewMap.getClass("mapper").getName());
+    }
+}
@@ -2,6 +2,7 @@ package com.github.phantomthief.model.builder.model;
 
 import java.util.List;
 
+import com.github.phantomthief.model.builder.annotation.RefId;
 import com.github.phantomthief.model.builder.util.ToStringUtils;
 
 /**
@@ -19,16 +20,23 @@ public class Comment implements HasId<Long>, HasUser {
         this.atUserIds = atUserIds;
     }
 
+    @RefId(User.class)
     @Override
     public Integer getUserId() {
         return userId;
     }
 
+    @RefId(namespace = "commentAuthor")
+    public int getAuthorId() {
+        return userId;
+    }
+
     @Override
     public Long getId() {
         return id;
     }
 
+    @RefId(User.class)
     public List<Integer> getAtUserIds() {
         return atUserIds;
     }
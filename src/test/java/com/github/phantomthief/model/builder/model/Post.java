@@ -3,6 +3,8 @@ package com.github.phantomthief.model.builder.model;
 import java.util.List;
 
 import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.github.phantomthief.model.builder.annotation.EmbeddedValue;
+import com.github.phantomthief.model.builder.annotation.RefId;
 import com.github.phantomthief.model.builder.util.ToStringUtils;
 
 /**
@@ -27,15 +29,18 @@ public class Post implements HasUser, HasId<Long> {
         return id;
     }
 
+    @RefId(User.class)
     @Override
     public Integer getUserId() {
         return userId;
     }
 
+    @EmbeddedValue(Comment.class)
     public List<Comment> comments() {
         return comments;
     }
 
+    @RefId(Comment.class)
     public List<Long> getCommentIds() {
         return commentIds;
     }
@@ -0,0 +1,108 @@
+package com.github.phantomthief.model.builder.util;
+
+import static java.util.concurrent.TimeUnit.MINUTES;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * @author w.vela
+ */
+class LongHashMapTest {
+
+    @Test
+    void testRemove() {
+        LongHashMap<String> map = new LongHashMap<>();
+        Map<Long, String> expected = new HashMap<>();
+        for (long i = 0; i < 100; i++) {
+            map.put(i, String.valueOf(i));
+            expected.put(i, String.valueOf(i));
+        }
+        for (long i = 0; i < 100; i += 3) {
+            assertEquals(String.valueOf(i), map.remove(i));
+            expected.remove(i);
+        }
+        assertNull(map.remove(0L));
+        assertFalse(map.containsKey(3L));
+        assertEquals(expected, map);
+        assertEquals(expected.size(), map.size());
+
+        // a removed key is put back, in its own slot or a new one
+        assertNull(map.put(3L, "three"));
+        assertEquals("three", map.get(3L));
+        assertEquals("three", map.get(3));
+        assertEquals(expected.size() + 1, map.size());
+    }
+
+    @Test
+    void testChurn() {
+        LongHashMap<String> map = new LongHashMap<>();
+        // a fixed number of live keys, each round replaces them by new ones, so tombstones are never reused
+        for (long round = 0; round < 1000; round++) {
+            for (long i = 0; i < 10; i++) {
+                map.put(round * 10 + i, String.valueOf(i));
+            }
+            for (long i = 0; i < 10; i++) {
+                assertEquals(String.valueOf(i), map.remove(round * 10 + i));
+            }
+            assertTrue(map.isEmpty());
+        }
+        map.put(-1L, "last");
+        assertEquals(1, map.size());
+        assertEquals("last", map.entrySet().iterator().next().getValue());
+    }
+
+    @Test
+    void testConcurrentRead() throws Exception {
+        LongHashMap<String> map = new LongHashMap<>();
+        for (long i = 0; i < 1000; i++) {
+            map.put(i, String.valueOf(i));
+        }
+        AtomicBoolean stop = new AtomicBoolean();
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<?>> readers = new ArrayList<>();
+            for (int r = 0; r < 4; r++) {
+                readers.add(executor.submit(() -> {
+                    while (!stop.get()) {
+                        // even keys are never removed, so they are never missed nor paired with another value.
+                        for (long i = 0; i < 1000; i += 2) {
+                            assertEquals(String.valueOf(i), map.get(i));
+                        }
+                        map.forEach((key, value) -> assertEquals(String.valueOf(key), value));
+                    }
+                }));
+            }
+            for (int round = 0; round < 200; round++) {
+                // odd keys are removed and put back, and new keys are put into the slots freed
+                for (long i = 1; i < 1000; i += 2) {
+                    map.remove(i);
+                    map.remove(i + 1000L * round);
+                }
+                for (long i = 1; i < 1000; i += 2) {
+                    map.put(i, String.valueOf(i));
+                    map.put(i + 1000L * (round + 1), String.valueOf(i + 1000L * (round + 1)));
+                }
+            }
+            stop.set(true);
+            for (Future<?> reader : readers) {
+                reader.get(1, MINUTES);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        assertEquals(1500, map.size());
+    }
+}
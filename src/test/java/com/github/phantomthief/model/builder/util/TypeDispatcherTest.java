@@ -0,0 +1,35 @@
+package com.github.phantomthief.model.builder.util;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+import com.github.phantomthief.model.builder.model.SubUser;
+import com.github.phantomthief.model.builder.model.User;
+
+/**
+ * @author w.vela
+ */
+class TypeDispatcherTest {
+
+    @Test
+    void testDispatch() {
+        AtomicInteger resolved = new AtomicInteger();
+        TypeDispatcher<String> dispatcher = new TypeDispatcher<>(type -> {
+            resolved.incrementAndGet();
+            return type.getSimpleName();
+        });
+        assertEquals("User", dispatcher.get(User.class));
+        assertEquals("User", dispatcher.get(User.class));
+        assertEquals(1, resolved.get());
+        assertEquals("SubUser", dispatcher.get(SubUser.class));
+        assertEquals(2, resolved.get());
+
+        // values are resolved again after invalidating
+        dispatcher.invalidate();
+        assertEquals("User", dispatcher.get(User.class));
+        assertEquals(3, resolved.get());
+    }
+}
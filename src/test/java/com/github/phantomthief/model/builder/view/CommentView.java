@@ -0,0 +1,32 @@
+package com.github.phantomthief.model.builder.view;
+
+import com.github.phantomthief.model.builder.TestBuildContext;
+import com.github.phantomthief.model.builder.model.Comment;
+import com.github.phantomthief.view.mapper.ViewFactory;
+
+/**
+ * @author w.vela
+ */
+public class CommentView {
+
+    private final Comment comment;
+    private final int visitorId;
+
+    private CommentView(Comment comment, int visitorId) {
+        this.comment = comment;
+        this.visitorId = visitorId;
+    }
+
+    @ViewFactory
+    public static CommentView of(Comment comment, TestBuildContext buildContext) {
+        return new CommentView(comment, buildContext.getVisitorId());
+    }
+
+    public Comment getComment() {
+        return comment;
+    }
+
+    public int getVisitorId() {
+        return visitorId;
+    }
+}
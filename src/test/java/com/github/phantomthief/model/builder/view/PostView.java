@@ -0,0 +1,26 @@
+package com.github.phantomthief.model.builder.view;
+
+import com.github.phantomthief.model.builder.model.Post;
+import com.github.phantomthief.view.mapper.ViewFactory;
+
+/**
+ * @author w.vela
+ */
+public class PostView {
+
+    private final Post post;
+
+    @ViewFactory
+    public PostView(Post post) {
+        this.post = post;
+    }
+
+    // not a factory
+    public PostView(PostView other) {
+        this.post = other.post;
+    }
+
+    public Post getPost() {
+        return post;
+    }
+}
@@ -0,0 +1,34 @@
+package com.github.phantomthief.model.builder.view;
+
+import com.github.phantomthief.model.builder.context.BuildContext;
+import com.github.phantomthief.model.builder.model.User;
+import com.github.phantomthief.view.mapper.ViewFactory;
+
+/**
+ * @author w.vela
+ */
+public class UserView {
+
+    private final User user;
+    private final boolean withBuildContext;
+
+    @ViewFactory
+    public UserView(User user) {
+        this.user = user;
+        this.withBuildContext = false;
+    }
+
+    @ViewFactory
+    public UserView(User user, BuildContext buildContext) {
+        this.user = user;
+        this.withBuildContext = buildContext != null;
+    }
+
+    public User getUser() {
+        return user;
+    }
+
+    public boolean isWithBuildContext() {
+        return withBuildContext;
+    }
+}